@@ -0,0 +1,77 @@
+import bench.Disassembler;
+
+import java.io.Writer;
+import java.text.ParseException;
+
+public class DisassemblerAdapter implements Disassembler {
+    private final Instruction insn = new Instruction();
+
+    @Override
+    public long decode32(int[] words) {
+        long checksum = 0;
+        for (int word : words) {
+            InstructionDecoder.decode32(word & 0xffffffffL, insn);
+            checksum += insn.opcode + insn.imm;
+        }
+        return checksum;
+    }
+
+    @Override
+    public long decode16(int[] halves, boolean table) {
+        RvcTable rvcTable = RvcTable.eager();
+        long checksum = 0;
+        for (int half : halves) {
+            if (table) {
+                rvcTable.decode(half, insn);
+            } else {
+                InstructionDecoder.decode16(half, insn);
+            }
+            checksum += insn.opcode + insn.imm;
+        }
+        return checksum;
+    }
+
+    @Override
+    public void parse(byte[] elf, int parallelism, Writer out) throws Exception {
+        ElfParser parser = new ElfParser(new ByteSource(elf));
+        parser.setParallelism(parallelism);
+        parser.parse(out);
+        out.flush();
+    }
+
+    @Override
+    public long scan(byte[] image, int offset, int length, String scanner) throws ParseException {
+        Source src = new ByteSource(image);
+        if (scanner.equals("serial")) {
+            // Both entries walked apart, as the parallel resync did before TextScanner
+            long ends = 0;
+            for (int entry = 0; entry <= 2; entry += 2) {
+                src.setPos(offset + entry);
+                long i = entry;
+                while (i < length) {
+                    if ((src.getNext2() & 3) == 3) {
+                        src.setPos(src.getPos() + 2);
+                        i += 4;
+                    } else {
+                        i += 2;
+                    }
+                }
+                ends += i;
+            }
+            return ends;
+        }
+        long[] exits = scanner(scanner).scan(src, offset, 0, length);
+        return exits[0] + exits[1];
+    }
+
+    private static TextScanner scanner(String name) {
+        if (name.equals("scalar")) {
+            return new TextScanner();
+        }
+        TextScanner scanner = TextScanner.get();
+        if (!scanner.name().startsWith(name)) {
+            throw new IllegalStateException("No " + name + " scanner, the Vector API needs Java 17+ and --add-modules jdk.incubator.vector");
+        }
+        return scanner;
+    }
+}
@@ -0,0 +1,47 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+// Decoding only, no text formatting. Scores are instructions per second
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DecodeBenchmark {
+    private static final int COUNT = 1 << 16;
+
+    private Disassembler disassembler;
+    private int[] words;
+    private int[] halves;
+
+    @Setup
+    public void setup() {
+        disassembler = Disassembler.load();
+        SyntheticElf elf = SyntheticElf.generate(8 * COUNT, 0, 42);
+        words = Arrays.copyOf(elf.words, COUNT);
+        halves = Arrays.copyOf(elf.halves, COUNT);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public long rv32() {
+        return disassembler.decode32(words);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public long rvc() {
+        return disassembler.decode16(halves, false);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public long rvcTable() {
+        return disassembler.decode16(halves, true);
+    }
+}
@@ -0,0 +1,27 @@
+package bench;
+
+import java.io.Writer;
+
+// JMH does not allow benchmarks in the default package, where the disassembler lives,
+// so benchmarks reach it through this interface implemented by DisassemblerAdapter
+public interface Disassembler {
+    // Decodes each word as a 32-bit instruction, returns a checksum of the results
+    long decode32(int[] words);
+
+    // Decodes each halfword as a compressed instruction, with or without the precomputed table
+    long decode16(int[] halves, boolean table);
+
+    void parse(byte[] elf, int parallelism, Writer out) throws Exception;
+
+    // Finds where the instructions of length bytes of code from offset end, with the "vector" or "scalar"
+    // TextScanner, or "serial" for one instruction at a time. Returns the end offsets
+    long scan(byte[] image, int offset, int length, String scanner) throws Exception;
+
+    static Disassembler load() {
+        try {
+            return (Disassembler) Class.forName("DisassemblerAdapter").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Disassembler sources are not on the classpath", e);
+        }
+    }
+}
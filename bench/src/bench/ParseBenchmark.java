@@ -0,0 +1,46 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+// Full parse() of a synthetic image into a discarding writer.
+// The "instructions" counter gives decoded instructions per second
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmark {
+    @Param({"1048576"})
+    public int textSize;
+
+    @Param({"1000"})
+    public int symbols;
+
+    @Param({"1"})
+    public int parallelism;
+
+    private Disassembler disassembler;
+    private SyntheticElf elf;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long instructions;
+    }
+
+    @Setup
+    public void setup() {
+        disassembler = Disassembler.load();
+        elf = SyntheticElf.generate(textSize, symbols, 42);
+    }
+
+    @Benchmark
+    public void parse(Counters counters) throws Exception {
+        disassembler.parse(elf.bytes, parallelism, Writer.nullWriter());
+        counters.instructions += elf.instructions;
+    }
+}
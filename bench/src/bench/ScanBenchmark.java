@@ -0,0 +1,35 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Instruction boundaries of the parallel resync found by TextScanner on the code of a synthetic image,
+// "serial" is the one-instruction-at-a-time walk. Scores are bytes per second. Needs Java 17+ for the Vector API
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class ScanBenchmark {
+    private static final int SIZE = 1 << 20;
+
+    @Param({"serial", "scalar", "vector"})
+    public String scanner;
+
+    private Disassembler disassembler;
+    private SyntheticElf elf;
+
+    @Setup
+    public void setup() {
+        disassembler = Disassembler.load();
+        elf = SyntheticElf.generate(SIZE, 0, 42);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public long scan() throws Exception {
+        return disassembler.scan(elf.bytes, SyntheticElf.TEXT_OFFSET, SIZE, scanner);
+    }
+}
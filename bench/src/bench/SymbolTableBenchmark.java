@@ -0,0 +1,39 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+// parse() of an image which is almost only a symbol table. The "symbols" counter gives symbols per second
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SymbolTableBenchmark {
+    @Param({"100000"})
+    public int symbolCount;
+
+    private Disassembler disassembler;
+    private SyntheticElf elf;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long symbols;
+    }
+
+    @Setup
+    public void setup() {
+        disassembler = Disassembler.load();
+        elf = SyntheticElf.generate(64, symbolCount, 42);
+    }
+
+    @Benchmark
+    public void parse(Counters counters) throws Exception {
+        disassembler.parse(elf.bytes, 1, Writer.nullWriter());
+        counters.symbols += symbolCount;
+    }
+}
@@ -0,0 +1,190 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+
+// Generates little-endian ELF32 RV32IMC images with random valid instructions and FUNC/OBJECT symbols
+public final class SyntheticElf {
+    public static final long TEXT_ADDR = 0x10000;
+    // Position of .text in the image, right after the ELF header
+    public static final int TEXT_OFFSET = 52;
+
+    private static final int HEADER_SIZE = 52;
+    private static final int SECTION_HEADER_SIZE = 40;
+    private static final int SYMBOL_SIZE = 16;
+
+    public final byte[] bytes;
+    public final int instructions;
+    public final int[] words;
+    public final int[] halves;
+
+    private SyntheticElf(byte[] bytes, int instructions, int[] words, int[] halves) {
+        this.bytes = bytes;
+        this.instructions = instructions;
+        this.words = words;
+        this.halves = halves;
+    }
+
+    // Roughly half of the instructions are compressed, like in -march=rv32imc builds
+    public static SyntheticElf generate(int textSize, int symbols, long seed) {
+        Random random = new Random(seed);
+        ByteBuffer text = ByteBuffer.allocate(textSize).order(ByteOrder.LITTLE_ENDIAN);
+        int[] words = new int[textSize / 4];
+        int[] halves = new int[textSize / 2];
+        int wordCount = 0;
+        int halfCount = 0;
+        int instructions = 0;
+        while (text.remaining() >= 4) {
+            if (random.nextBoolean()) {
+                int half = randomCompressed(random);
+                text.putShort((short) half);
+                halves[halfCount++] = half;
+            } else {
+                int word = random32(random);
+                text.putInt(word);
+                words[wordCount++] = word;
+            }
+            instructions++;
+        }
+        while (text.remaining() >= 2) {
+            text.putShort((short) 0x0001); // c.nop
+            halves[halfCount++] = 1;
+            instructions++;
+        }
+
+        ByteBuffer strtab = ByteBuffer.allocate(1 + symbols * 16);
+        ByteBuffer symtab = ByteBuffer.allocate((symbols + 1) * SYMBOL_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        strtab.put((byte) 0);
+        symtab.position(SYMBOL_SIZE);
+        for (int i = 0; i < symbols; i++) {
+            boolean function = i % 4 != 0;
+            int nameOffset = strtab.position();
+            strtab.put(((function ? "func_" : "object_") + i).getBytes(StandardCharsets.US_ASCII)).put((byte) 0);
+            symtab.putInt(nameOffset);
+            symtab.putInt((int) (TEXT_ADDR + 2L * random.nextInt(Math.max(1, textSize / 2))));
+            symtab.putInt(random.nextInt(256));
+            symtab.put((byte) ((1 << 4) | (function ? 2 : 1))); // GLOBAL FUNC or OBJECT
+            symtab.put((byte) 0);
+            symtab.putShort((short) 1);
+        }
+        byte[] shstrtab = "\0.text\0.symtab\0.strtab\0.shstrtab\0".getBytes(StandardCharsets.US_ASCII);
+
+        int textPos = TEXT_OFFSET;
+        int symtabPos = align(textPos + textSize);
+        int strtabPos = symtabPos + symtab.capacity();
+        int shstrtabPos = strtabPos + strtab.position();
+        int shoff = align(shstrtabPos + shstrtab.length);
+        int sections = 5;
+        ByteBuffer elf = ByteBuffer.allocate(shoff + sections * SECTION_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        elf.put(new byte[]{0x7f, 'E', 'L', 'F', 1, 1, 1, 0});
+        elf.position(16);
+        elf.putShort((short) 2);    // e_type = EXEC
+        elf.putShort((short) 0xf3); // e_machine = RISC-V
+        elf.putInt(1);
+        elf.putInt((int) TEXT_ADDR);
+        elf.putInt(0);
+        elf.putInt(shoff);
+        elf.putInt(0);
+        elf.putShort((short) HEADER_SIZE);
+        elf.putShort((short) 0);
+        elf.putShort((short) 0);
+        elf.putShort((short) SECTION_HEADER_SIZE);
+        elf.putShort((short) sections);
+        elf.putShort((short) 4);
+
+        elf.position(textPos);
+        elf.put(text.array());
+        elf.position(symtabPos);
+        elf.put(symtab.array());
+        elf.put(strtab.array(), 0, strtab.position());
+        elf.put(shstrtab);
+
+        elf.position(shoff + SECTION_HEADER_SIZE);
+        sectionHeader(elf, 1, 1, 6, (int) TEXT_ADDR, textPos, textSize, 0, 2, 0);
+        sectionHeader(elf, 7, 2, 0, 0, symtabPos, symtab.capacity(), 3, 4, SYMBOL_SIZE);
+        sectionHeader(elf, 15, 3, 0, 0, strtabPos, strtab.position(), 0, 1, 0);
+        sectionHeader(elf, 23, 3, 0, 0, shstrtabPos, shstrtab.length, 0, 1, 0);
+        return new SyntheticElf(elf.array(), instructions,
+                Arrays.copyOf(words, wordCount), Arrays.copyOf(halves, halfCount));
+    }
+
+    private static int align(int pos) {
+        return (pos + 3) & ~3;
+    }
+
+    private static void sectionHeader(ByteBuffer elf, int name, int type, int flags, int addr, int offset, int size,
+                                      int link, int align, int entsize) {
+        elf.putInt(name).putInt(type).putInt(flags).putInt(addr).putInt(offset).putInt(size)
+                .putInt(link).putInt(0).putInt(align).putInt(entsize);
+    }
+
+    private static int reg(Random random) {
+        return random.nextInt(32);
+    }
+
+    private static final int[] OPCODES = {0b0110011, 0b0010011, 0b0000011, 0b0100011, 0b1100011,
+            0b1100111, 0b1101111, 0b0010111, 0b0110111, 0b1110011};
+
+    private static int random32(Random random) {
+        int opcode = OPCODES[random.nextInt(OPCODES.length)];
+        int funct3 = random.nextInt(8);
+        int rd = reg(random) << 7;
+        int rs1 = reg(random) << 15;
+        int rs2 = reg(random) << 20;
+        switch (opcode) {
+            case 0b0110011:
+                int[] funct7 = {0, 0, 1, 0b0100000};
+                return funct7[random.nextInt(4)] << 25 | rs2 | rs1 | funct3 << 12 | rd | opcode;
+            case 0b0000011:
+                funct3 = new int[]{0, 1, 2, 4, 5}[random.nextInt(5)];
+                break;
+            case 0b0100011:
+                funct3 = random.nextInt(3);
+                break;
+            case 0b1100011:
+                funct3 = new int[]{0, 1, 4, 5, 6, 7}[random.nextInt(6)];
+                break;
+            case 0b1100111:
+                funct3 = 0;
+                break;
+            case 0b1110011:
+                funct3 = 1 + random.nextInt(3);
+                break;
+            case 0b0010011:
+                if (funct3 == 1 || funct3 == 5) {
+                    return (funct3 == 5 && random.nextBoolean() ? 0b0100000 << 25 : 0) | rs2 | rs1 | funct3 << 12
+                            | rd | opcode;
+                }
+                break;
+        }
+        return random.nextInt(1 << 12) << 20 | rs1 | funct3 << 12 | rd | opcode;
+    }
+
+    private static final int[][] COMPRESSED_FUNCT3 = {{0b000, 0b010, 0b110}, {0, 1, 2, 3, 4, 5, 6, 7},
+            {0b000, 0b010, 0b100, 0b110}};
+
+    private static int randomCompressed(Random random) {
+        int quadrant = random.nextInt(3);
+        int[] funct3 = COMPRESSED_FUNCT3[quadrant];
+        return funct3[random.nextInt(funct3.length)] << 13 | random.nextInt(1 << 11) << 2 | quadrant;
+    }
+
+    // Writes an image to disk: SyntheticElf <output> <text size in bytes> <symbols> [seed]
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: SyntheticElf <output> <text size in bytes> <symbols> [seed]");
+            return;
+        }
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 1;
+        SyntheticElf elf = generate(Integer.parseInt(args[1]), Integer.parseInt(args[2]), seed);
+        Files.write(Paths.get(args[0]), elf.bytes);
+        System.out.println(elf.instructions + " instructions written to " + args[0]);
+    }
+}
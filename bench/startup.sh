@@ -0,0 +1,67 @@
+#!/bin/bash
+# Startup benchmark: median time to the first byte of the listing and to the end of it, over several runs
+# of the disassembler on one (small) file, for each way of starting it:
+#
+#   bench/startup.sh <file.elf> [runs]
+#
+#   jar          plain java -jar
+#   cds          with the AppCDS archive of scripts/cds.sh, built first if missing
+#   cds+c1       the same with only the C1 compiler, which suits short runs on few cores
+#   native       target/elf-disassembler, when built with native-image
+#   before       BEFORE=<jar of an older build> to compare with it
+set -e
+
+cd "$(dirname "$0")/.."
+ELF=$1
+RUNS=${2:-20}
+JAR=target/elf-disassembler-1.0-SNAPSHOT.jar
+ARCHIVE=target/elf-disassembler.jsa
+
+if [ -z "$ELF" ]; then
+    echo "Usage: bench/startup.sh <file.elf> [runs]" >&2
+    exit 1
+fi
+if [ ! -f "$JAR" ]; then
+    mvn -B -q package -DskipTests
+fi
+if [ ! -f "$ARCHIVE" ]; then
+    scripts/cds.sh "$ELF" > /dev/null
+fi
+
+# Prints "<ms to first byte> <ms to end>" of one run of the command with input and output appended
+run() {
+    local start
+    start=$(date +%s%N)
+    "$@" "$ELF" /dev/stdout | {
+        head -c 1 > /dev/null
+        local first
+        first=$(date +%s%N)
+        cat > /dev/null
+        echo $(((first - start) / 1000000)) $((($(date +%s%N) - start) / 1000000))
+    }
+}
+
+median() {
+    sort -n | awk '{ v[NR] = $1 } END { print v[int((NR + 1) / 2)] }'
+}
+
+measure() {
+    local name=$1
+    shift
+    # Warms up the file cache
+    run "$@" > /dev/null
+    local times
+    times=$(for i in $(seq "$RUNS"); do run "$@"; done)
+    printf "%-8s %8s %8s\n" "$name" "$(cut -d' ' -f1 <<< "$times" | median)" "$(cut -d' ' -f2 <<< "$times" | median)"
+}
+
+printf "%-8s %8s %8s\n" "" "first ms" "total ms"
+if [ -n "$BEFORE" ]; then
+    measure before java -jar "$BEFORE"
+fi
+measure jar java -jar "$JAR"
+measure cds java -XX:SharedArchiveFile="$ARCHIVE" -jar "$JAR"
+measure cds+c1 java -XX:SharedArchiveFile="$ARCHIVE" -XX:TieredStopAtLevel=1 -jar "$JAR"
+if [ -x target/elf-disassembler ]; then
+    measure native target/elf-disassembler
+fi
@@ -0,0 +1,39 @@
+#!/bin/sh
+# Builds an AppCDS archive of the classes a disassembly loads, so later runs map them instead of
+# loading and verifying them again:
+#
+#   scripts/cds.sh [options] <sample.elf>
+#   java -XX:SharedArchiveFile=target/elf-disassembler.jsa -jar target/elf-disassembler-1.0-SNAPSHOT.jar [options] <in> <out>
+#
+# The sample run is done with the given options, use the ones the real runs use (--labels, --format=jsonl...).
+# Rebuild the archive after rebuilding the jar or changing the JDK, the JVM ignores a stale archive.
+set -e
+
+cd "$(dirname "$0")/.."
+JAR=target/elf-disassembler-1.0-SNAPSHOT.jar
+ARCHIVE=${ARCHIVE:-target/elf-disassembler.jsa}
+JAVA=${JAVA:-java}
+
+if [ $# -lt 1 ]; then
+    echo "Usage: scripts/cds.sh [options] <sample.elf>" >&2
+    exit 1
+fi
+if [ ! -f "$JAR" ]; then
+    mvn -B -q package -DskipTests
+fi
+
+OUT=$(mktemp)
+trap 'rm -f "$OUT" "$OUT.classlist"' EXIT
+
+# 1.8.0_x, 11.0.2, 17...
+VERSION=$("$JAVA" -version 2>&1 | sed -n 's/.*version "\([0-9]*\).*/\1/p' | head -n 1)
+rm -f "$ARCHIVE"
+if [ "$VERSION" -ge 13 ]; then
+    # Dynamic archive on top of the JDK one, written when the sample run exits
+    "$JAVA" -XX:ArchiveClassesAtExit="$ARCHIVE" -jar "$JAR" "$@" "$OUT"
+else
+    # Java 11 and 12: list the loaded classes, then dump them in a static archive
+    "$JAVA" -XX:DumpLoadedClassList="$OUT.classlist" -jar "$JAR" "$@" "$OUT"
+    "$JAVA" -Xshare:dump -XX:SharedClassListFile="$OUT.classlist" -XX:SharedArchiveFile="$ARCHIVE" -cp "$JAR"
+fi
+echo "Wrote $ARCHIVE, run with: $JAVA -XX:SharedArchiveFile=$ARCHIVE -jar $JAR [options] <in> <out>"
@@ -0,0 +1,42 @@
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.nio.ByteOrder;
+
+// TextScanner with the Vector API (jdk.incubator.vector, Java 17). Compiled apart from src by the vector
+// profile, since the project targets Java 11, and loaded by TextScanner.get() only when the module is there.
+// Vectors are capped at 512 bits, so a bitmap word always holds whole vectors of halfwords
+final class VectorTextScanner extends TextScanner {
+    private static final int BITS = Math.max(256, Math.min(512, VectorShape.preferredShape().vectorBitSize()));
+    private static final VectorSpecies<Short> HALVES = VectorSpecies.of(short.class, VectorShape.forBitSize(BITS));
+
+    @Override
+    String name() {
+        return "vector" + BITS;
+    }
+
+    @Override
+    void longBits(byte[] code, int offset, int halves, long[] longBits) {
+        int lanes = HALVES.length();
+        int words = (halves + 63) >>> 6;
+        for (int w = 0; w < words; w++) {
+            long bits = 0;
+            int first = w << 6;
+            int count = Math.min(64, halves - first);
+            int k = 0;
+            for (; k + lanes <= count; k += lanes) {
+                ShortVector v = ShortVector.fromByteArray(HALVES, code, offset + 2 * (first + k), ByteOrder.LITTLE_ENDIAN);
+                VectorMask<Short> heads = v.and((short) 3).eq((short) 3);
+                bits |= heads.toLong() << k;
+            }
+            for (; k < count; k++) {
+                if ((code[offset + 2 * (first + k)] & 3) == 3) {
+                    bits |= 1L << k;
+                }
+            }
+            longBits[w] = bits;
+        }
+    }
+}
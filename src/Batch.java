@@ -0,0 +1,191 @@
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Disassembles many files at once. Input is a directory (walked recursively), a glob
+// such as "build/**/*.elf" or "@manifest" with one path per line. Each listing goes to
+// <output directory>/<path relative to the input>.txt, a failing file does not stop the others
+public class Batch {
+    private final Options options;
+    private final Path outputDir;
+    private final AtomicLong done = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final Map<Path, String> failures = new ConcurrentSkipListMap<>();
+
+    public Batch(Options options) {
+        this.options = options;
+        this.outputDir = Paths.get(options.files.get(1));
+    }
+
+    // Returns false if any file failed
+    public boolean run() {
+        List<Path[]> jobs;
+        try {
+            jobs = collect(options.files.get(0));
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Sorry, could not list input files: " + e.getMessage());
+            return false;
+        }
+        long start = System.nanoTime();
+        ExecutorService pool;
+        try {
+            pool = options.virtualThreads ? newVirtualThreadPool() : Executors.newFixedThreadPool(options.jobs);
+        } catch (UnsupportedOperationException e) {
+            System.err.println(e.getMessage());
+            return false;
+        }
+        // Virtual threads are not limited by the pool, so --jobs bounds the files in flight for both kinds
+        Semaphore permits = new Semaphore(options.jobs);
+        try {
+            for (Path[] job : jobs) {
+                permits.acquireUninterruptibly();
+                pool.execute(() -> {
+                    try {
+                        disassemble(job[0], job[1]);
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+        } finally {
+            pool.shutdown();
+        }
+        try {
+            while (!pool.awaitTermination(1, TimeUnit.MINUTES)) {
+                // Big files take long, keep waiting
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        printSummary(jobs.size(), System.nanoTime() - start);
+        return failures.isEmpty();
+    }
+
+    private void disassemble(Path input, Path output) {
+        String failure;
+        try {
+            Source source = new MappedSource(input);
+            Files.createDirectories(output.toAbsolutePath().getParent());
+            Main.disassemble(options.newParser(source), output);
+            bytes.addAndGet(source.size());
+            done.incrementAndGet();
+            return;
+        } catch (ParseException e) {
+            failure = "incorrect file: " + e.getMessage().replace('\n', ' ') + e.getErrorOffset();
+        } catch (IOException e) {
+            failure = "I/O error: " + e;
+        } catch (RuntimeException e) {
+            failure = "internal error: " + e;
+        }
+        failures.put(input, failure);
+        try {
+            // Do not leave a partial listing behind
+            Files.deleteIfExists(output);
+        } catch (IOException e) {
+            failures.put(input, failure + ", could not delete " + output);
+        }
+    }
+
+    private void printSummary(int total, long nanos) {
+        double seconds = Math.max(nanos, 1) / 1e9;
+        double megabytes = bytes.get() / (1024.0 * 1024.0);
+        System.err.printf("Disassembled %d of %d files (%.1f MB) in %.2f s: %.1f files/s, %.1f MB/s%n",
+                done.get(), total, megabytes, seconds, done.get() / seconds, megabytes / seconds);
+        if (!failures.isEmpty()) {
+            System.err.println("Failed: " + failures.size());
+            for (Map.Entry<Path, String> failure : failures.entrySet()) {
+                System.err.println("  " + failure.getKey() + ": " + failure.getValue());
+            }
+        }
+    }
+
+    // Pairs of input file and output file
+    private List<Path[]> collect(String input) throws IOException {
+        List<Path[]> jobs = new ArrayList<>();
+        if (input.startsWith("@")) {
+            Path manifest = Paths.get(input.substring(1));
+            Path base = manifest.toAbsolutePath().getParent();
+            for (String line : Files.readAllLines(manifest)) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                Path file = base.resolve(line).normalize();
+                jobs.add(job(file, file.startsWith(base) ? base.relativize(file) : file.getFileName()));
+            }
+            return jobs;
+        }
+        Path base;
+        PathMatcher matcher;
+        if (input.indexOf('*') >= 0 || input.indexOf('?') >= 0 || input.indexOf('[') >= 0 || input.indexOf('{') >= 0) {
+            // The walk starts from the longest prefix without glob characters
+            int cut = input.lastIndexOf('/', firstGlobChar(input));
+            base = Paths.get(cut < 0 ? "." : input.substring(0, Math.max(cut, 1)));
+            String pattern = cut < 0 ? input : input.substring(cut + 1);
+            PathMatcher glob = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+            // Like in shells, "**/" also matches no directories at all
+            PathMatcher top = FileSystems.getDefault()
+                    .getPathMatcher("glob:" + pattern.replaceFirst("^\\*\\*/", ""));
+            matcher = path -> glob.matches(path) || top.matches(path);
+        } else if (Files.isDirectory(Paths.get(input))) {
+            base = Paths.get(input);
+            matcher = path -> true;
+        } else {
+            throw new IllegalArgumentException(input + " is neither a directory, a glob nor a @manifest");
+        }
+        Path root = base;
+        try (Stream<Path> walk = Files.walk(root)) {
+            for (Path file : walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList())) {
+                Path relative = root.relativize(file);
+                if (matcher.matches(relative)) {
+                    jobs.add(job(file, relative));
+                }
+            }
+        }
+        return jobs;
+    }
+
+    private static int firstGlobChar(String input) {
+        for (int i = 0; i < input.length(); i++) {
+            if ("*?[{".indexOf(input.charAt(i)) >= 0) {
+                return i;
+            }
+        }
+        return input.length();
+    }
+
+    private Path[] job(Path input, Path relative) {
+        return new Path[]{input, outputDir.resolve(relative + ".txt")};
+    }
+
+    // Virtual threads appeared in Java 21, while the project targets Java 11
+    private static ExecutorService newVirtualThreadPool() {
+        try {
+            return (ExecutorService) MethodHandles.publicLookup()
+                    .findStatic(Executors.class, "newVirtualThreadPerTaskExecutor", MethodType.methodType(ExecutorService.class))
+                    .invoke();
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new UnsupportedOperationException("Virtual threads need Java 21 or newer");
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,9 +1,11 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.text.ParseException;
 
 public abstract class ByteParser {
-    protected final ByteSource source;
+    protected final Source source;
 
-    protected ByteParser(final ByteSource source) {
+    protected ByteParser(final Source source) {
         this.source = source;
     }
 
@@ -15,16 +17,24 @@ public abstract class ByteParser {
     }
 
     protected long read2() throws ParseException {
-        long first = read();
-        return (read() << 8) | first;
+        if (!source.hasNext(2)) {
+            error("Unexpected end of file");
+        }
+        return source.getNext2();
     }
 
     protected long read4() throws ParseException {
-        long[] bytes = new long[4];
-        for (int i = 0; i < 4; i++) {
-            bytes[i] = read();
+        if (!source.hasNext(4)) {
+            error("Unexpected end of file");
+        }
+        return source.getNext4();
+    }
+
+    protected long read8() throws ParseException {
+        if (!source.hasNext(8)) {
+            error("Unexpected end of file");
         }
-        return (bytes[3] << 24) | (bytes[2] << 16) | (bytes[1] << 8) | bytes[0];
+        return source.getNext8();
     }
 
     protected void expect(long expected) throws ParseException {
@@ -50,5 +60,17 @@ public abstract class ByteParser {
         source.error(message);
     }
 
-    public abstract String parse() throws ParseException;
+    // Writes the result to out as soon as each part of it is ready
+    public abstract void parse(Appendable out) throws ParseException, IOException;
+
+    public String parse() throws ParseException {
+        StringBuilder result = new StringBuilder();
+        try {
+            parse(result);
+        } catch (IOException e) {
+            // StringBuilder does not throw
+            throw new UncheckedIOException(e);
+        }
+        return result.toString();
+    }
 }
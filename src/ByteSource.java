@@ -1,26 +1,58 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.text.ParseException;
 
 public class ByteSource implements Source {
-    private final long[] content;
+    private final ByteBuffer content;
     private long pos;
 
     public ByteSource(byte[] bytes) {
-        long[] longs = new long[bytes.length];
-        for (int i = 0; i < bytes.length; i++) {
-            longs[i] = bytes[i];
-            if (longs[i] < 0) {
-                longs[i] += 256;
-            }
-        }
-        this.content = longs;
+        this(ByteBuffer.wrap(bytes));
+    }
+
+    protected ByteSource(ByteBuffer buffer) {
+        this.content = buffer.order(ByteOrder.LITTLE_ENDIAN);
     }
 
     public boolean hasNext() {
-        return pos < content.length;
+        return pos < content.limit();
+    }
+
+    public boolean hasNext(long count) {
+        return pos >= 0 && pos + count <= content.limit();
     }
 
     public long getNext() {
-        return content[(int) pos++];
+        return content.get((int) pos++) & 0xffL;
+    }
+
+    public long getNext2() {
+        long value = content.getShort((int) pos) & 0xffffL;
+        pos += 2;
+        return value;
+    }
+
+    public long getNext4() {
+        long value = content.getInt((int) pos) & 0xffffffffL;
+        pos += 4;
+        return value;
+    }
+
+    public long getNext8() {
+        long value = content.getLong((int) pos);
+        pos += 8;
+        return value;
+    }
+
+    public void getBytes(byte[] dst, int offset, int length) {
+        ByteBuffer view = content.duplicate();
+        view.position((int) pos);
+        view.get(dst, offset, length);
+        pos += length;
+    }
+
+    public long size() {
+        return content.limit();
     }
 
     public long getPos() {
@@ -34,4 +66,10 @@ public class ByteSource implements Source {
     public void error(String message) throws ParseException {
         throw new ParseException("Error while parsing: " + message + "\nPosition #", (int) pos);
     }
-}
\ No newline at end of file
+
+    public Source duplicate() {
+        ByteSource copy = new ByteSource(content.duplicate());
+        copy.pos = pos;
+        return copy;
+    }
+}
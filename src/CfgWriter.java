@@ -0,0 +1,98 @@
+import java.io.IOException;
+
+// Writes control-flow graphs either as one Graphviz digraph with a cluster per function, where
+// blocks are labelled with their instructions, or as a JSON object with the blocks and successors
+// of every function. Functions are formatted separately, so it can be done on several threads
+public final class CfgWriter {
+    private final boolean json;
+
+    public CfgWriter(boolean json) {
+        this.json = json;
+    }
+
+    public void begin(Appendable out) throws IOException {
+        if (json) {
+            out.append("{\"functions\": [\n");
+        } else {
+            out.append("digraph cfg {\n");
+            out.append("  node [shape=box, fontname=\"monospace\"];\n");
+        }
+    }
+
+    public void end(Appendable out) throws IOException {
+        out.append(json ? "\n]}\n" : "}\n");
+    }
+
+    // index is the position of the graph in the output, starting from 0
+    public void format(ControlFlowGraph graph, int index, InstructionFormatter formatter, StringBuilder out) {
+        if (json) {
+            formatJson(graph, index, out);
+        } else {
+            formatDot(graph, index, formatter, out);
+        }
+    }
+
+    private static void formatDot(ControlFlowGraph graph, int index, InstructionFormatter formatter,
+                                  StringBuilder out) {
+        out.append("  subgraph \"cluster_").append(index).append("\" {\n");
+        out.append("    label=\"");
+        Json.escape(graph.name, out);
+        out.append("\";\n");
+        InstructionBuffer insns = graph.instructions();
+        Instruction insn = new Instruction();
+        StringBuilder command = new StringBuilder();
+        for (int b = 0; b < graph.blockCount(); b++) {
+            out.append("    f").append(index).append('b').append(b).append(" [label=\"");
+            long addr = graph.blockStart(b);
+            int first = graph.firstInstruction(b);
+            for (int k = first; k < first + graph.instructionCount(b); k++) {
+                insns.get(k, insn);
+                command.setLength(0);
+                formatter.format(insn, addr, command);
+                InstructionFormatter.appendHex(addr, 8, out);
+                out.append(": ");
+                Json.escape(command, out);
+                // Left justified line
+                out.append("\\l");
+                addr += insn.length;
+            }
+            out.append("\"];\n");
+        }
+        for (int b = 0; b < graph.blockCount(); b++) {
+            for (int e = graph.edgeStart(b); e < graph.edgeStart(b + 1); e++) {
+                out.append("    f").append(index).append('b').append(b)
+                        .append(" -> f").append(index).append('b').append(graph.edgeTarget(e))
+                        .append(" [label=\"").append(ControlFlowGraph.edgeKindName(graph.edgeKind(e))).append("\"];\n");
+            }
+        }
+        out.append("  }\n");
+    }
+
+    private static void formatJson(ControlFlowGraph graph, int index, StringBuilder out) {
+        if (index > 0) {
+            out.append(",\n");
+        }
+        out.append("{\"name\": \"");
+        Json.escape(graph.name, out);
+        out.append("\", \"address\": ");
+        Json.address(graph.address, out);
+        out.append(", \"blocks\": [");
+        for (int b = 0; b < graph.blockCount(); b++) {
+            out.append(b > 0 ? ",\n  " : "\n  ");
+            out.append("{\"start\": ");
+            Json.address(graph.blockStart(b), out);
+            out.append(", \"end\": ");
+            Json.address(graph.blockEnd(b), out);
+            out.append(", \"instructions\": ").append(graph.instructionCount(b)).append(", \"successors\": [");
+            for (int e = graph.edgeStart(b); e < graph.edgeStart(b + 1); e++) {
+                if (e > graph.edgeStart(b)) {
+                    out.append(", ");
+                }
+                out.append('[').append(graph.edgeTarget(e)).append(", \"")
+                        .append(ControlFlowGraph.edgeKindName(graph.edgeKind(e))).append("\"]");
+            }
+            out.append("]}");
+        }
+        out.append("]}");
+    }
+}
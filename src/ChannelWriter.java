@@ -0,0 +1,87 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+// UTF-8 writer over a channel which copies ASCII chars straight into a direct buffer.
+// The disassembler only produces chars below 0x100, so surrogate pairs are not handled
+public class ChannelWriter extends Writer {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    public ChannelWriter(WritableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    private void put(char c) throws IOException {
+        if (buffer.remaining() < 3) {
+            drain();
+        }
+        if (c < 0x80) {
+            buffer.put((byte) c);
+        } else if (c < 0x800) {
+            buffer.put((byte) (0xc0 | (c >> 6)));
+            buffer.put((byte) (0x80 | (c & 0x3f)));
+        } else {
+            buffer.put((byte) (0xe0 | (c >> 12)));
+            buffer.put((byte) (0x80 | ((c >> 6) & 0x3f)));
+            buffer.put((byte) (0x80 | (c & 0x3f)));
+        }
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        put((char) c);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        for (int i = off; i < off + len; i++) {
+            put(cbuf[i]);
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        for (int i = off; i < off + len; i++) {
+            put(str.charAt(i));
+        }
+    }
+
+    @Override
+    public Writer append(CharSequence csq) throws IOException {
+        return append(csq, 0, csq.length());
+    }
+
+    @Override
+    public Writer append(CharSequence csq, int start, int end) throws IOException {
+        for (int i = start; i < end; i++) {
+            put(csq.charAt(i));
+        }
+        return this;
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        drain();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            drain();
+        } finally {
+            channel.close();
+        }
+    }
+}
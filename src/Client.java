@@ -0,0 +1,94 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+// Sends one file to a running Server and writes the listing it returns, for build scripts:
+// "java Main --client [options] <input> <output>" gives the same output as without --client
+public class Client {
+    private final Options options;
+    private final List<String> forwarded;
+
+    // forwarded are the command line options for the server
+    public Client(Options options, List<String> forwarded) {
+        this.options = options;
+        this.forwarded = forwarded;
+    }
+
+    // Returns false if the server could not be reached or failed, the reason is printed
+    public boolean run() {
+        try {
+            Server.requestOptions(forwarded);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Can not send this to the server: " + e.getMessage());
+            return false;
+        }
+        // "-" sends standard input to the server, a file is read by the server itself
+        boolean upload = options.files.get(0).equals("-");
+        Path output = Paths.get(options.files.get(1));
+        StringBuilder url = new StringBuilder("http://127.0.0.1:").append(options.port).append("/disassemble?");
+        if (!upload) {
+            url.append("path=").append(encode(Paths.get(options.files.get(0)).toAbsolutePath().toString()));
+        }
+        for (String arg : forwarded) {
+            url.append("&arg=").append(encode(arg));
+        }
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(url.toString()).openConnection();
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            if (upload) {
+                connection.setChunkedStreamingMode(64 * 1024);
+                try (OutputStream body = connection.getOutputStream()) {
+                    System.in.transferTo(body);
+                }
+            } else {
+                connection.getOutputStream().close();
+            }
+            int status = connection.getResponseCode();
+            if (status != 200) {
+                System.err.print("Server failed: " + read(connection.getErrorStream()));
+                return false;
+            }
+            // The output file is only replaced by a complete listing
+            Path partial = Files.createTempFile(output.toAbsolutePath().getParent(), ".listing", ".tmp");
+            try (InputStream in = connection.getInputStream()) {
+                Files.copy(in, partial, StandardCopyOption.REPLACE_EXISTING);
+                Files.move(partial, output, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(partial);
+            }
+            return true;
+        } catch (ConnectException e) {
+            System.err.println("No server on port " + options.port + ", start one with java Main --serve");
+        } catch (IOException e) {
+            System.err.println("Sorry, an error occurred while talking to the server: " + e);
+        }
+        return false;
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private static String read(InputStream in) throws IOException {
+        if (in == null) {
+            return "\n";
+        }
+        try (in) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            in.transferTo(bytes);
+            return bytes.toString(StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+// Executable part of the file which is decoded as one instruction stream: a section with
+// SHF_EXECINSTR, or a PT_LOAD segment with PF_X when the file has no such sections
+public final class CodeRegion {
+    public final String name;
+    // Virtual address of the first byte
+    public final long address;
+    // Position in the file
+    public final long offset;
+    public final long size;
+
+    public CodeRegion(String name, long address, long offset, long size) {
+        this.name = name;
+        this.address = address;
+        this.offset = offset;
+        this.size = size;
+    }
+
+    // Whether [addr, addr + length) is inside the region
+    public boolean contains(long addr, long length) {
+        return addr >= address && length >= 0 && addr - address + length <= size;
+    }
+}
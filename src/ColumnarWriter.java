@@ -0,0 +1,189 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+// Writes the listing in a little-endian columnar format meant to be memory-mapped by readers:
+//
+//   header: "RVCOLS\0\1", u32 xlen, u32 0
+//   blocks: u32 kind, u32 count, u64 payload size (padded to 8 bytes, so the next block is aligned)
+//     REGION       u64 address, u64 size, count name bytes
+//     INSTRUCTIONS u64 address[count], i32 imm[count], u32 raw[count], u16 opcode[count],
+//                  u8 rd[count], u8 rs1[count], u8 rs2[count], u8 length[count]
+//     SYMBOLS      u64 value[count], u64 size[count], u32 name offset[count], u32 name length[count],
+//                  u16 shndx[count], u8 info[count], u8 other[count], name bytes
+//     END          nothing, the last block
+//
+// Every column starts aligned to its element size. At most BLOCK_SIZE rows are buffered at once
+public final class ColumnarWriter implements ListingSink {
+    public static final int END = 0;
+    public static final int REGION = 1;
+    public static final int INSTRUCTIONS = 2;
+    public static final int SYMBOLS = 3;
+
+    private static final byte[] MAGIC = {'R', 'V', 'C', 'O', 'L', 'S', 0, 1};
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    private final WritableByteChannel channel;
+    private int count;
+    private final long[] addrs = new long[BLOCK_SIZE];
+    private final int[] imms = new int[BLOCK_SIZE];
+    private final int[] raws = new int[BLOCK_SIZE];
+    private final short[] opcodes = new short[BLOCK_SIZE];
+    private final byte[] rds = new byte[BLOCK_SIZE];
+    private final byte[] rs1s = new byte[BLOCK_SIZE];
+    private final byte[] rs2s = new byte[BLOCK_SIZE];
+    private final byte[] lengths = new byte[BLOCK_SIZE];
+    // Symbols reuse addrs for values
+    private int symbolCount;
+    private final long[] sizes = new long[BLOCK_SIZE];
+    private final short[] shndxs = new short[BLOCK_SIZE];
+    private final byte[] infos = new byte[BLOCK_SIZE];
+    private final byte[] others = new byte[BLOCK_SIZE];
+    private final byte[][] names = new byte[BLOCK_SIZE][];
+    private ByteBuffer buffer = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+
+    public ColumnarWriter(WritableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    @Override
+    public void start(int xlen) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(MAGIC).putInt(xlen).putInt(0).flip();
+        write(header);
+    }
+
+    @Override
+    public void region(CodeRegion region) throws IOException {
+        flushInstructions();
+        byte[] name = region.name.getBytes(StandardCharsets.ISO_8859_1);
+        ByteBuffer block = block(REGION, name.length, 16 + name.length);
+        block.putLong(region.address).putLong(region.size).put(name);
+        writeBlock(block);
+    }
+
+    @Override
+    public void instruction(long addr, long raw, Instruction insn) throws IOException {
+        addrs[count] = addr;
+        imms[count] = (int) insn.imm;
+        raws[count] = (int) raw;
+        opcodes[count] = (short) insn.opcode;
+        rds[count] = (byte) insn.rd;
+        rs1s[count] = (byte) insn.rs1;
+        rs2s[count] = (byte) insn.rs2;
+        lengths[count] = (byte) insn.length;
+        if (++count == BLOCK_SIZE) {
+            flushInstructions();
+        }
+    }
+
+    @Override
+    public void symbol(long index, long value, long size, long info, long other, long shndx, String name)
+            throws IOException {
+        flushInstructions();
+        addrs[symbolCount] = value;
+        sizes[symbolCount] = size;
+        infos[symbolCount] = (byte) info;
+        others[symbolCount] = (byte) other;
+        shndxs[symbolCount] = (short) shndx;
+        // Names are read as ISO-8859-1, so this gives back their bytes in the file
+        names[symbolCount] = name.getBytes(StandardCharsets.ISO_8859_1);
+        if (++symbolCount == BLOCK_SIZE) {
+            flushSymbols();
+        }
+    }
+
+    @Override
+    public void finish() throws IOException {
+        flushInstructions();
+        flushSymbols();
+        writeBlock(block(END, 0, 0));
+    }
+
+    private void flushInstructions() throws IOException {
+        if (count == 0) {
+            return;
+        }
+        ByteBuffer block = block(INSTRUCTIONS, count, count * 22L);
+        for (int k = 0; k < count; k++) {
+            block.putLong(addrs[k]);
+        }
+        for (int k = 0; k < count; k++) {
+            block.putInt(imms[k]);
+        }
+        for (int k = 0; k < count; k++) {
+            block.putInt(raws[k]);
+        }
+        for (int k = 0; k < count; k++) {
+            block.putShort(opcodes[k]);
+        }
+        block.put(rds, 0, count).put(rs1s, 0, count).put(rs2s, 0, count).put(lengths, 0, count);
+        writeBlock(block);
+        count = 0;
+    }
+
+    private void flushSymbols() throws IOException {
+        if (symbolCount == 0) {
+            return;
+        }
+        long nameBytes = 0;
+        for (int k = 0; k < symbolCount; k++) {
+            nameBytes += names[k].length;
+        }
+        ByteBuffer block = block(SYMBOLS, symbolCount, symbolCount * 28L + nameBytes);
+        for (int k = 0; k < symbolCount; k++) {
+            block.putLong(addrs[k]);
+        }
+        for (int k = 0; k < symbolCount; k++) {
+            block.putLong(sizes[k]);
+        }
+        int offset = 0;
+        for (int k = 0; k < symbolCount; k++) {
+            block.putInt(offset);
+            offset += names[k].length;
+        }
+        for (int k = 0; k < symbolCount; k++) {
+            block.putInt(names[k].length);
+        }
+        for (int k = 0; k < symbolCount; k++) {
+            block.putShort(shndxs[k]);
+        }
+        block.put(infos, 0, symbolCount).put(others, 0, symbolCount);
+        for (int k = 0; k < symbolCount; k++) {
+            block.put(names[k]);
+            names[k] = null;
+        }
+        writeBlock(block);
+        symbolCount = 0;
+    }
+
+    // Buffer with the block header, with room for the padded payload
+    private ByteBuffer block(int kind, int rows, long payload) {
+        long padded = (payload + 7) & ~7L;
+        int size = (int) (16 + padded);
+        if (buffer.capacity() < size) {
+            buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        buffer.clear();
+        buffer.putInt(kind).putInt(rows).putLong(padded);
+        buffer.limit(size);
+        return buffer;
+    }
+
+    private void writeBlock(ByteBuffer block) throws IOException {
+        while (block.hasRemaining()) {
+            // Padding
+            block.put((byte) 0);
+        }
+        block.flip();
+        write(block);
+    }
+
+    private void write(ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            channel.write(data);
+        }
+    }
+}
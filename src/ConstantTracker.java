@@ -0,0 +1,249 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+// Follows the registers set by auipc, lui, c.lui, li and c.li through addi, addiw, c.addi and c.addiw
+// during linear decoding, and annotates the addi, load, store and jalr using such a register with the
+// absolute address and the FUNC or OBJECT symbol there: "# 00012040 <table+0x8>". Values built from li
+// are constants, only annotated where a load, store or jalr uses them and they fall in a symbol.
+// All registers are forgotten at function starts and labels, after control flow and invalid
+// instructions, so only pairs inside a basic block are resolved.
+// Constant work and no allocation per instruction.
+//
+// A tracker decoding a chunk in the middle of a region does not know the registers it starts with,
+// they are "inherited" from the end of the previous chunk. Annotations depending on them are
+// pending until splice writes the chunk after the previous one, so the output does not depend on chunking
+public final class ConstantTracker {
+    private static final byte UNKNOWN = 0;
+    private static final byte KNOWN = 1;
+    // Value of the register "bases[r]" at the chunk start plus values[r]
+    private static final byte INHERITED = 2;
+    // Known, from li or c.li
+    private static final byte CONSTANT = 3;
+
+    private final SymbolIndex symbols;
+    private final long addrMask;
+    private final byte[] states = new byte[32];
+    private final byte[] bases = new byte[32];
+    private final long[] values = new long[32];
+    // Annotations waiting for inherited registers: where they go in the chunk text, and their address
+    // relative to which register
+    private int[] pendingPositions = new int[16];
+    private byte[] pendingBases = new byte[16];
+    private long[] pendingOffsets = new long[16];
+    // Whether the address is sign extended from 32 bits, for addiw
+    private boolean[] pendingWords = new boolean[16];
+    // Whether the address is used by a load, store or jalr, not computed by addi
+    private boolean[] pendingUses = new boolean[16];
+    private int pendingCount;
+    // Annotation of the current instruction waiting for an inherited register
+    private boolean pending;
+    private byte pendingBase;
+    private long pendingOffset;
+    private boolean pendingWord;
+    private boolean pendingUse;
+    private final StringBuilder annotation = new StringBuilder();
+
+    // Annotations name FUNC and OBJECT symbols
+    public ConstantTracker(SymbolIndex symbols, int xlen) {
+        this.symbols = symbols;
+        this.addrMask = xlen == 32 ? 0xffffffffL : -1L;
+    }
+
+    // Nothing is known, like at the start of a region
+    public void reset() {
+        Arrays.fill(states, UNKNOWN);
+    }
+
+    // Registers come from the previous chunk
+    public void inherit() {
+        for (int r = 1; r < 32; r++) {
+            states[r] = INHERITED;
+            bases[r] = (byte) r;
+            values[r] = 0;
+        }
+        states[0] = UNKNOWN;
+    }
+
+    // Called for each decoded instruction in address order with its formatted text, which may get an annotation.
+    // blockStart is true at function starts and labels. Returns true when the annotation is pending,
+    // then markPending should be called with its position
+    public boolean next(Instruction insn, long addr, boolean blockStart, StringBuilder command) {
+        if (blockStart) {
+            reset();
+        }
+        pending = false;
+        switch (insn.opcode) {
+            case Instruction.AUIPC:
+                set(insn.rd, KNOWN, 0, addr + insn.imm);
+                return false;
+            case Instruction.LUI:
+                set(insn.rd, KNOWN, 0, insn.imm);
+                return false;
+            case Instruction.C_LUI:
+                // The immediate is already shifted by the decoder
+                set(insn.rd, KNOWN, 0, insn.imm);
+                return false;
+            case Instruction.C_LI:
+                set(insn.rd, CONSTANT, 0, insn.imm);
+                return false;
+            case Instruction.ADDI:
+            case Instruction.ADDIW:
+            case Instruction.C_ADDI:
+            case Instruction.C_ADDIW: {
+                // c.addi and c.addiw add to rd
+                int rs1 = insn.opcode == Instruction.C_ADDI || insn.opcode == Instruction.C_ADDIW ? insn.rd : insn.rs1;
+                boolean word = insn.opcode == Instruction.ADDIW || insn.opcode == Instruction.C_ADDIW;
+                if (rs1 == 0) {
+                    // li
+                    set(insn.rd, CONSTANT, 0, word ? (int) insn.imm : insn.imm);
+                    return false;
+                }
+                byte state = states[rs1];
+                long value = values[rs1] + insn.imm;
+                byte base = bases[rs1];
+                annotate(state, base, value, word, false, command);
+                if (word && (state == KNOWN || state == CONSTANT)) {
+                    value = (int) value;
+                }
+                // addiw of an inherited value can not be followed
+                set(insn.rd, word && state == INHERITED ? UNKNOWN : state, base, value);
+                return pending;
+            }
+            case Instruction.UNKNOWN:
+            case Instruction.ILLEGAL:
+                // Probably data, the code after it is not a continuation
+                reset();
+                return false;
+            case Instruction.JALR:
+            case Instruction.C_JR:
+            case Instruction.C_JALR:
+                annotate(states[insn.rs1], bases[insn.rs1], values[insn.rs1] + insn.imm, false, true, command);
+                reset();
+                return pending;
+            default:
+                break;
+        }
+        int form = insn.form();
+        if (form == Instruction.FORM_LOAD || form == Instruction.FORM_STORE) {
+            annotate(states[insn.rs1], bases[insn.rs1], values[insn.rs1] + insn.imm, false, true, command);
+        }
+        switch (form) {
+            case Instruction.FORM_BRANCH:
+            case Instruction.FORM_JUMP:
+            case Instruction.FORM_TARGET:
+            case Instruction.FORM_RS1_TARGET:
+                reset();
+                break;
+            case Instruction.FORM_RD_RS1_RS2:
+            case Instruction.FORM_RD_RS1_IMM:
+            case Instruction.FORM_LOAD:
+            case Instruction.FORM_RD_IMM:
+            case Instruction.FORM_CSR:
+            case Instruction.FORM_CSR_IMM:
+            case Instruction.FORM_RD_RS2:
+                set(insn.rd, UNKNOWN, 0, 0);
+                break;
+            default:
+                break;
+        }
+        return pending;
+    }
+
+    // The pending annotation of the last instruction goes at this position of the chunk text
+    public void markPending(int position) {
+        if (pendingCount == pendingPositions.length) {
+            pendingPositions = Arrays.copyOf(pendingPositions, pendingCount * 2);
+            pendingBases = Arrays.copyOf(pendingBases, pendingCount * 2);
+            pendingOffsets = Arrays.copyOf(pendingOffsets, pendingCount * 2);
+            pendingWords = Arrays.copyOf(pendingWords, pendingCount * 2);
+            pendingUses = Arrays.copyOf(pendingUses, pendingCount * 2);
+        }
+        pendingPositions[pendingCount] = position;
+        pendingBases[pendingCount] = pendingBase;
+        pendingOffsets[pendingCount] = pendingOffset;
+        pendingWords[pendingCount] = pendingWord;
+        pendingUses[pendingCount] = pendingUse;
+        pendingCount++;
+    }
+
+    // Writes the text of the chunk decoded by next, which follows the code this tracker saw last,
+    // with its pending annotations, then takes over the registers at the end of the chunk
+    public void splice(ConstantTracker next, CharSequence text, Appendable out) throws IOException {
+        int written = 0;
+        for (int k = 0; k < next.pendingCount; k++) {
+            int base = next.pendingBases[k];
+            out.append(text, written, next.pendingPositions[k]);
+            written = next.pendingPositions[k];
+            if (states[base] == KNOWN || states[base] == CONSTANT && next.pendingUses[k]) {
+                annotation.setLength(0);
+                long value = values[base] + next.pendingOffsets[k];
+                appendAnnotation(next.pendingWords[k] ? (int) value : value, states[base] == CONSTANT, annotation);
+                out.append(annotation);
+            }
+        }
+        out.append(text, written, text.length());
+        // Registers of this tracker are never inherited, it saw the code from a region start
+        byte[] oldStates = states.clone();
+        long[] oldValues = values.clone();
+        for (int r = 0; r < 32; r++) {
+            byte state = next.states[r];
+            if (state == INHERITED) {
+                int base = next.bases[r];
+                if (oldStates[base] == KNOWN || oldStates[base] == CONSTANT) {
+                    set(r, oldStates[base], 0, oldValues[base] + next.values[r]);
+                } else {
+                    set(r, UNKNOWN, 0, 0);
+                }
+            } else {
+                set(r, state, 0, next.values[r]);
+            }
+        }
+    }
+
+    private void annotate(byte state, byte base, long value, boolean word, boolean use, StringBuilder command) {
+        if (state == KNOWN || state == CONSTANT && use) {
+            appendAnnotation(word ? (int) value : value, state == CONSTANT, command);
+        } else if (state == INHERITED) {
+            pending = true;
+            pendingBase = base;
+            pendingOffset = value;
+            pendingWord = word;
+            pendingUse = use;
+        }
+    }
+
+    // Constants are only annotated inside a symbol, small ones are rarely addresses
+    private void appendAnnotation(long value, boolean constant, StringBuilder out) {
+        long addr = value & addrMask;
+        int symbol = symbols.indexOf(addr);
+        if (symbol < 0) {
+            symbol = symbols.indexOfPreceding(addr);
+            // Only inside a symbol with a known size
+            if (symbol >= 0 && symbols.symbolSize(symbol) == 0) {
+                symbol = -1;
+            }
+        }
+        boolean named = symbol >= 0 && symbols.name(symbol).length() > 0;
+        if (constant && !named) {
+            return;
+        }
+        out.append(" # ");
+        InstructionFormatter.appendHex(addr, 8, out);
+        if (named) {
+            out.append(" <").append(symbols.name(symbol));
+            if (symbols.address(symbol) != addr) {
+                out.append("+0x");
+                InstructionFormatter.appendHex(addr - symbols.address(symbol), 1, out);
+            }
+            out.append('>');
+        }
+    }
+
+    private void set(int reg, byte state, int base, long value) {
+        if (reg != 0) {
+            states[reg] = state;
+            bases[reg] = (byte) base;
+            values[reg] = state == KNOWN || state == CONSTANT ? value & addrMask : value;
+        }
+    }
+}
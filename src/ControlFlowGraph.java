@@ -0,0 +1,269 @@
+import java.util.Arrays;
+
+// Basic blocks and intra-function edges of one function, found by recursive descent from its entry,
+// so only reachable code is decoded. Everything is kept in primitive arrays: blocks are sorted by
+// address, and the successors of block b are edgeTargets[edgeStarts[b] .. edgeStarts[b + 1])
+public final class ControlFlowGraph {
+    public static final byte FALLTHROUGH = 0;
+    public static final byte TAKEN = 1;
+    public static final byte JUMP = 2;
+
+    private static final String[] EDGE_KINDS = {"fallthrough", "taken", "jump"};
+
+    // How an instruction passes control on
+    private static final int NEXT = 0;      // to the next instruction, calls included
+    private static final int BRANCH = 1;    // to the target or the next instruction
+    private static final int GOTO = 2;      // to the target only
+    private static final int STOP = 3;      // out of the function: returns, indirect jumps, invalid code
+
+    public final String name;
+    public final long address;
+    // Reached instructions in address order
+    private final InstructionBuffer insns;
+    private final long[] blockStarts;
+    // Index of the first instruction of each block, plus the instruction count at the end
+    private final int[] blockFirsts;
+    private final int[] edgeStarts;
+    private final int[] edgeTargets;
+    private final byte[] edgeKinds;
+
+    private ControlFlowGraph(String name, long address, InstructionBuffer insns, long[] blockStarts,
+                             int[] blockFirsts, int[] edgeStarts, int[] edgeTargets, byte[] edgeKinds) {
+        this.name = name;
+        this.address = address;
+        this.insns = insns;
+        this.blockStarts = blockStarts;
+        this.blockFirsts = blockFirsts;
+        this.edgeStarts = edgeStarts;
+        this.edgeTargets = edgeTargets;
+        this.edgeKinds = edgeKinds;
+    }
+
+    public static String edgeKindName(byte kind) {
+        return EDGE_KINDS[kind];
+    }
+
+    public int blockCount() {
+        return blockStarts.length;
+    }
+
+    public long blockStart(int block) {
+        return blockStarts[block];
+    }
+
+    // Address right after the last instruction of the block
+    public long blockEnd(int block) {
+        long end = blockStarts[block];
+        for (int k = blockFirsts[block]; k < blockFirsts[block + 1]; k++) {
+            end += insns.length(k);
+        }
+        return end;
+    }
+
+    public int firstInstruction(int block) {
+        return blockFirsts[block];
+    }
+
+    public int instructionCount(int block) {
+        return blockFirsts[block + 1] - blockFirsts[block];
+    }
+
+    public InstructionBuffer instructions() {
+        return insns;
+    }
+
+    public int edgeCount() {
+        return edgeTargets.length;
+    }
+
+    public int edgeStart(int block) {
+        return edgeStarts[block];
+    }
+
+    public int edgeTarget(int edge) {
+        return edgeTargets[edge];
+    }
+
+    public byte edgeKind(int edge) {
+        return edgeKinds[edge];
+    }
+
+    // Walks the function [address, address + size) of the region from its entry
+    public static ControlFlowGraph build(String name, Source src, CodeRegion region, long address, long size,
+                                         int xlen, RvcTable rvcTable) {
+        long base = address - region.address;
+        size = Math.min(size, region.size - base);
+        int halves = (int) Math.max(0, (size + 1) / 2);
+        long[] visited = new long[(halves + 63) / 64];
+        long[] leaders = new long[(halves + 63) / 64];
+        InstructionBuffer found = new InstructionBuffer(64);
+        long[] offsets = new long[64];
+        long[] stack = new long[16];
+        int stackSize = 0;
+        if (halves > 0) {
+            stack[stackSize++] = 0;
+            set(leaders, 0);
+        }
+        Instruction insn = new Instruction();
+        while (stackSize > 0) {
+            long offset = stack[--stackSize];
+            while (offset >= 0 && offset < size && (offset & 1) == 0 && !get(visited, (int) (offset / 2))) {
+                if (!decode(src, region.offset + base + offset, insn, xlen, rvcTable)) {
+                    break;
+                }
+                set(visited, (int) (offset / 2));
+                if (found.size() == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                }
+                offsets[found.size()] = offset;
+                found.add(insn);
+                long next = offset + insn.length;
+                int flow = flow(insn);
+                if (flow == BRANCH || flow == GOTO) {
+                    long target = offset + insn.imm;
+                    if (target >= 0 && target < size && (target & 1) == 0) {
+                        set(leaders, (int) (target / 2));
+                        if (stackSize == stack.length) {
+                            stack = Arrays.copyOf(stack, stackSize * 2);
+                        }
+                        stack[stackSize++] = target;
+                    }
+                }
+                if (flow == GOTO || flow == STOP) {
+                    break;
+                }
+                if (flow == BRANCH && next < size) {
+                    set(leaders, (int) (next / 2));
+                }
+                offset = next;
+            }
+        }
+        return assemble(name, address, found, offsets, leaders);
+    }
+
+    private static ControlFlowGraph assemble(String name, long address, InstructionBuffer found, long[] offsets,
+                                             long[] leaders) {
+        int count = found.size();
+        // Sort instructions by offset, keys keep the index in the low 32 bits. Offsets are even and their
+        // halfword fits an int, so keys do not overflow
+        long[] order = new long[count];
+        for (int k = 0; k < count; k++) {
+            order[k] = offsets[k] / 2 << 32 | k;
+        }
+        Arrays.sort(order);
+        InstructionBuffer insns = new InstructionBuffer(count);
+        long[] sorted = new long[count];
+        Instruction insn = new Instruction();
+        for (int k = 0; k < count; k++) {
+            int index = (int) order[k];
+            sorted[k] = offsets[index];
+            found.get(index, insn);
+            insns.add(insn);
+        }
+
+        // A block starts at a leader, after a block ending instruction, or after a gap
+        int[] firsts = new int[count + 1];
+        int blocks = 0;
+        for (int k = 0; k < count; k++) {
+            boolean start = k == 0 || get(leaders, (int) (sorted[k] / 2))
+                    || sorted[k - 1] + insns.length(k - 1) != sorted[k] || endsBlock(insns, k - 1, insn);
+            if (start) {
+                firsts[blocks++] = k;
+            }
+        }
+        firsts[blocks] = count;
+        long[] starts = new long[blocks];
+        for (int b = 0; b < blocks; b++) {
+            starts[b] = sorted[firsts[b]];
+        }
+
+        int[] edgeStarts = new int[blocks + 1];
+        int[] targets = new int[blocks * 2];
+        byte[] kinds = new byte[blocks * 2];
+        int edges = 0;
+        for (int b = 0; b < blocks; b++) {
+            edgeStarts[b] = edges;
+            int last = firsts[b + 1] - 1;
+            insns.get(last, insn);
+            long next = sorted[last] + insn.length;
+            int flow = flow(insn);
+            if (flow == BRANCH || flow == GOTO) {
+                int target = Arrays.binarySearch(starts, sorted[last] + insn.imm);
+                if (target >= 0) {
+                    targets[edges] = target;
+                    kinds[edges++] = flow == BRANCH ? TAKEN : JUMP;
+                }
+            }
+            if (flow == BRANCH || flow == NEXT) {
+                int target = b + 1 < blocks && starts[b + 1] == next ? b + 1 : -1;
+                if (target >= 0) {
+                    targets[edges] = target;
+                    kinds[edges++] = FALLTHROUGH;
+                }
+            }
+        }
+        edgeStarts[blocks] = edges;
+        for (int b = 0; b < blocks; b++) {
+            starts[b] += address;
+        }
+        return new ControlFlowGraph(name, address, insns, starts, Arrays.copyOf(firsts, blocks + 1), edgeStarts,
+                Arrays.copyOf(targets, edges), Arrays.copyOf(kinds, edges));
+    }
+
+    private static boolean endsBlock(InstructionBuffer insns, int index, Instruction insn) {
+        insns.get(index, insn);
+        return flow(insn) != NEXT;
+    }
+
+    private static int flow(Instruction insn) {
+        switch (insn.opcode) {
+            case Instruction.BEQ:
+            case Instruction.BNE:
+            case Instruction.BLT:
+            case Instruction.BGE:
+            case Instruction.BLTU:
+            case Instruction.BGEU:
+            case Instruction.C_BEQZ:
+            case Instruction.C_BNEZ:
+                return BRANCH;
+            case Instruction.JAL:
+                // jal with a link register is a call, which comes back
+                return insn.rd == 0 ? GOTO : NEXT;
+            case Instruction.C_J:
+                return GOTO;
+            case Instruction.JALR:
+                return insn.rd == 0 ? STOP : NEXT;
+            case Instruction.C_JR:
+            case Instruction.UNKNOWN:
+            case Instruction.ILLEGAL:
+                return STOP;
+            default:
+                return NEXT;
+        }
+    }
+
+    private static boolean decode(Source src, long pos, Instruction insn, int xlen, RvcTable rvcTable) {
+        if (pos < 0 || pos + 2 > src.size()) {
+            return false;
+        }
+        src.setPos(pos);
+        long first = src.getNext2();
+        if ((first & 3) != 3) {
+            rvcTable.decode(first, insn);
+            return true;
+        }
+        if (!src.hasNext(2)) {
+            return false;
+        }
+        InstructionDecoder.decode32((src.getNext2() << 16) | first, insn, xlen);
+        return true;
+    }
+
+    private static boolean get(long[] bits, int index) {
+        return (bits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    private static void set(long[] bits, int index) {
+        bits[index >>> 6] |= 1L << index;
+    }
+}
@@ -0,0 +1,187 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+// Local directory cache of disassembly results, shared by any number of processes.
+// Entries are <dir>/<kind>/<sha-256 key>. They are written to a temporary file and renamed
+// into place, so readers only ever see complete entries. Reading an entry refreshes its
+// modification time, and the least recently used entries are evicted above the size limit
+public class DisassemblyCache {
+    // Bump when the decoder or the entry layout changes, old entries are then never hit
+    static final int VERSION = 1;
+
+    private final Path dir;
+    private final long maxBytes;
+
+    public DisassemblyCache(Path dir, long maxBytes) throws IOException {
+        this.dir = Files.createDirectories(dir);
+        this.maxBytes = maxBytes;
+    }
+
+    // Path of an existing entry, or null
+    public Path lookup(String kind, String key) {
+        Path entry = dir.resolve(kind).resolve(key);
+        try {
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            return entry;
+        } catch (IOException e) {
+            // Missing, or evicted by another process right now
+            return null;
+        }
+    }
+
+    public Entry create(String kind, String key) throws IOException {
+        Path kindDir = Files.createDirectories(dir.resolve(kind));
+        return new Entry(kindDir.resolve(key), Files.createTempFile(kindDir, key, ".tmp"));
+    }
+
+    // An entry being written. Closing it without commit() drops it
+    public class Entry implements Closeable {
+        private final Path target;
+        private final Path temp;
+        private final OutputStream out;
+        private boolean closed;
+
+        private Entry(Path target, Path temp) throws IOException {
+            this.target = target;
+            this.temp = temp;
+            this.out = Files.newOutputStream(temp);
+        }
+
+        public OutputStream out() {
+            return out;
+        }
+
+        public void commit() throws IOException {
+            out.close();
+            closed = true;
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            evict();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                out.close();
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    private void evict() throws IOException {
+        // One process evicts at a time, the others just skip it
+        try (FileChannel lockChannel = FileChannel.open(dir.resolve(".lock"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock lock = lockChannel.tryLock()) {
+            if (lock == null) {
+                return;
+            }
+            List<Path> entries = new ArrayList<>();
+            List<BasicFileAttributes> attributes = new ArrayList<>();
+            long total = 0;
+            try (Stream<Path> walk = Files.walk(dir, 2)) {
+                for (Path path : (Iterable<Path>) walk::iterator) {
+                    if (path.getNameCount() - dir.getNameCount() != 2 || path.toString().endsWith(".tmp")) {
+                        continue;
+                    }
+                    try {
+                        BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+                        entries.add(path);
+                        attributes.add(attrs);
+                        total += attrs.size();
+                    } catch (NoSuchFileException e) {
+                        // Replaced concurrently
+                    }
+                }
+            }
+            if (total <= maxBytes) {
+                return;
+            }
+            Integer[] order = new Integer[entries.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) ->
+                    attributes.get(a).lastModifiedTime().compareTo(attributes.get(b).lastModifiedTime()));
+            for (int i = 0; i < order.length && total > maxBytes; i++) {
+                try {
+                    Files.deleteIfExists(entries.get(order[i]));
+                    total -= attributes.get(order[i]).size();
+                } catch (IOException e) {
+                    // In use on systems which do not allow deleting open files, try next time
+                }
+            }
+        } catch (OverlappingFileLockException e) {
+            // Another thread of this process is evicting
+        }
+    }
+
+    // Builds a cache key as a SHA-256 over the given values and source ranges
+    public static final class Key {
+        private final MessageDigest digest;
+        private final byte[] chunk = new byte[64 * 1024];
+
+        public Key(String kind) {
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is always available", e);
+            }
+            add(kind).add(VERSION);
+        }
+
+        public Key add(String value) {
+            digest.update(value.getBytes(StandardCharsets.UTF_8));
+            return add(value.length());
+        }
+
+        public Key add(long value) {
+            for (int i = 0; i < 8; i++) {
+                digest.update((byte) (value >>> (8 * i)));
+            }
+            return this;
+        }
+
+        // Bytes [pos, pos + length) of source, clamped to its end. Only the content counts, not
+        // where it is in the file. Does not move the source cursor, and on a stream only waits for
+        // these bytes, not for the end
+        public Key add(Source source, long pos, long length) {
+            Source src = source.duplicate();
+            long end = pos + src.available(pos, length);
+            add(end - pos);
+            src.setPos(pos);
+            while (src.getPos() < end) {
+                int size = (int) Math.min(chunk.length, end - src.getPos());
+                src.getBytes(chunk, 0, size);
+                digest.update(chunk, 0, size);
+            }
+            return this;
+        }
+
+        public String hex() {
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest.digest()) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,217 @@
+import java.text.ParseException;
+
+// Offsets of the ELF header, section header, program header and symbol fields this tool reads,
+// for ELF32 and ELF64. Accessors read a field of the structure starting at the given file position,
+// so parsing does not depend on the order of fields, which differs between the two classes
+public final class ElfLayout {
+    public static final ElfLayout ELF32 = new ElfLayout(32,
+            28, 32, 42, 44, 46, 48, 50,
+            0, 4, 8, 12, 16, 20,
+            0, 4, 8, 16, 24,
+            0, 4, 8, 12, 13, 14, 16);
+    public static final ElfLayout ELF64 = new ElfLayout(64,
+            32, 40, 54, 56, 58, 60, 62,
+            0, 4, 8, 16, 24, 32,
+            0, 8, 16, 32, 4,
+            0, 8, 16, 4, 5, 6, 24);
+
+    // Register width of the matching RISC-V base ISA, also the width of addresses and sizes
+    public final int xlen;
+    private final int e_phoff;
+    private final int e_shoff;
+    private final int e_phentsize;
+    private final int e_phnum;
+    private final int e_shentsize;
+    private final int e_shnum;
+    private final int e_shstrndx;
+    private final int sh_name;
+    private final int sh_type;
+    private final int sh_flags;
+    private final int sh_addr;
+    private final int sh_offset;
+    private final int sh_size;
+    private final int p_type;
+    private final int p_offset;
+    private final int p_vaddr;
+    private final int p_filesz;
+    private final int p_flags;
+    private final int st_name;
+    private final int st_value;
+    private final int st_size;
+    private final int st_info;
+    private final int st_other;
+    private final int st_shndx;
+    // Size of one symbol table entry
+    public final int symbolSize;
+
+    private ElfLayout(int xlen, int e_phoff, int e_shoff, int e_phentsize, int e_phnum,
+                      int e_shentsize, int e_shnum, int e_shstrndx,
+                      int sh_name, int sh_type, int sh_flags, int sh_addr, int sh_offset, int sh_size,
+                      int p_type, int p_offset, int p_vaddr, int p_filesz, int p_flags,
+                      int st_name, int st_value, int st_size, int st_info, int st_other, int st_shndx,
+                      int symbolSize) {
+        this.xlen = xlen;
+        this.e_phoff = e_phoff;
+        this.e_shoff = e_shoff;
+        this.e_phentsize = e_phentsize;
+        this.e_phnum = e_phnum;
+        this.e_shentsize = e_shentsize;
+        this.e_shnum = e_shnum;
+        this.e_shstrndx = e_shstrndx;
+        this.sh_name = sh_name;
+        this.sh_type = sh_type;
+        this.sh_flags = sh_flags;
+        this.sh_addr = sh_addr;
+        this.sh_offset = sh_offset;
+        this.sh_size = sh_size;
+        this.p_type = p_type;
+        this.p_offset = p_offset;
+        this.p_vaddr = p_vaddr;
+        this.p_filesz = p_filesz;
+        this.p_flags = p_flags;
+        this.st_name = st_name;
+        this.st_value = st_value;
+        this.st_size = st_size;
+        this.st_info = st_info;
+        this.st_other = st_other;
+        this.st_shndx = st_shndx;
+        this.symbolSize = symbolSize;
+    }
+
+    // By EI_CLASS, null for unknown classes
+    public static ElfLayout of(long elfClass) {
+        if (elfClass == 1) {
+            return ELF32;
+        } else if (elfClass == 2) {
+            return ELF64;
+        }
+        return null;
+    }
+
+    public long e_phoff(Source src) throws ParseException {
+        return word(src, e_phoff);
+    }
+
+    public long e_phentsize(Source src) throws ParseException {
+        return half(src, e_phentsize);
+    }
+
+    public long e_phnum(Source src) throws ParseException {
+        return half(src, e_phnum);
+    }
+
+    public long e_shoff(Source src) throws ParseException {
+        return word(src, e_shoff);
+    }
+
+    public long e_shentsize(Source src) throws ParseException {
+        return half(src, e_shentsize);
+    }
+
+    public long e_shnum(Source src) throws ParseException {
+        return half(src, e_shnum);
+    }
+
+    public long e_shstrndx(Source src) throws ParseException {
+        return half(src, e_shstrndx);
+    }
+
+    public long sh_name(Source src, long header) throws ParseException {
+        return u32(src, header + sh_name);
+    }
+
+    public long sh_type(Source src, long header) throws ParseException {
+        return u32(src, header + sh_type);
+    }
+
+    public long sh_flags(Source src, long header) throws ParseException {
+        return word(src, header + sh_flags);
+    }
+
+    public long sh_addr(Source src, long header) throws ParseException {
+        return word(src, header + sh_addr);
+    }
+
+    public long sh_offset(Source src, long header) throws ParseException {
+        return word(src, header + sh_offset);
+    }
+
+    public long sh_size(Source src, long header) throws ParseException {
+        return word(src, header + sh_size);
+    }
+
+    public long p_type(Source src, long header) throws ParseException {
+        return u32(src, header + p_type);
+    }
+
+    public long p_offset(Source src, long header) throws ParseException {
+        return word(src, header + p_offset);
+    }
+
+    public long p_vaddr(Source src, long header) throws ParseException {
+        return word(src, header + p_vaddr);
+    }
+
+    public long p_filesz(Source src, long header) throws ParseException {
+        return word(src, header + p_filesz);
+    }
+
+    public long p_flags(Source src, long header) throws ParseException {
+        return u32(src, header + p_flags);
+    }
+
+    public long st_name(Source src, long symbol) throws ParseException {
+        return u32(src, symbol + st_name);
+    }
+
+    public long st_value(Source src, long symbol) throws ParseException {
+        return word(src, symbol + st_value);
+    }
+
+    public long st_size(Source src, long symbol) throws ParseException {
+        return word(src, symbol + st_size);
+    }
+
+    public long st_info(Source src, long symbol) throws ParseException {
+        return u8(src, symbol + st_info);
+    }
+
+    public long st_other(Source src, long symbol) throws ParseException {
+        return u8(src, symbol + st_other);
+    }
+
+    public long st_shndx(Source src, long symbol) throws ParseException {
+        return half(src, symbol + st_shndx);
+    }
+
+    private static long u8(Source src, long pos) throws ParseException {
+        at(src, pos, 1);
+        return src.getNext();
+    }
+
+    private static long half(Source src, long pos) throws ParseException {
+        at(src, pos, 2);
+        return src.getNext2();
+    }
+
+    private static long u32(Source src, long pos) throws ParseException {
+        at(src, pos, 4);
+        return src.getNext4();
+    }
+
+    // Addresses, offsets and sizes, 4 or 8 bytes
+    private long word(Source src, long pos) throws ParseException {
+        if (xlen == 32) {
+            return u32(src, pos);
+        }
+        at(src, pos, 8);
+        return src.getNext8();
+    }
+
+    private static void at(Source src, long pos, int size) throws ParseException {
+        src.setPos(pos);
+        if (pos < 0 || !src.hasNext(size)) {
+            src.error("Unexpected end of file");
+        }
+    }
+}
@@ -1,19 +1,68 @@
+import jdk.jfr.FlightRecorder;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.text.ParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
 
 public class ElfParser extends ByteParser {
+    private ElfLayout layout;
     private long e_shoff;
     private long e_shentsize;
     private long e_shnum;
     private long e_shstrndx;
-    private long shstr_offset;
-    private long strtab_offset;
-    private long textBegin;
-    private long pc;
-    private final Map<Long, String> addrToName = new HashMap<>();
+    private StringTable shstrtab;
+    private StringTable strtab;
+    private final List<CodeRegion> regions = new ArrayList<>();
+    private Set<String> selected;
+    private boolean ranged;
+    private long rangeStart;
+    private long rangeStop;
+    private String symbol;
+    private long symtabPos;
+    private long symtabSize;
+    private boolean prepared;
+    private int parallelism = 1;
+    private boolean internNames;
+    private boolean relativeTargets;
+    private boolean labels;
+    private LocalLabels localLabels;
+    private boolean buildXrefs;
+    private XrefIndex.Builder xrefBuilder;
+    private XrefIndex xrefs;
+    private boolean resolvePairs;
+    private final SymbolIndex symbols = new SymbolIndex();
+    // Chosen by RvcTable.forCode once the code size is known, unless set
+    private RvcTable rvcTable;
+    private DisassemblyCache cache;
+    private ElfParser previous;
+    private Path diffOutput;
+    private TextDiff diff;
+    private final Map<CodeRegion, PreviousRegion> previousRegions = new HashMap<>();
+    private final SymbolIndex functions = new SymbolIndex();
+    private Stats stats;
 
-    private static String TO_STT(long num) {
+    static String TO_STT(long num) {
         switch ((int) num) {
             case 0:
                 return "NOTYPE";
@@ -33,7 +82,7 @@ public class ElfParser extends ByteParser {
         }
     }
 
-    private static String TO_STB(long num) {
+    static String TO_STB(long num) {
         switch ((int) num) {
             case 0:
                 return "LOCAL";
@@ -49,7 +98,7 @@ public class ElfParser extends ByteParser {
         }
     }
 
-    private static String TO_STV(long num) {
+    static String TO_STV(long num) {
         switch ((int) num) {
             case 0:
                 return "DEFAULT";
@@ -64,7 +113,7 @@ public class ElfParser extends ByteParser {
         }
     }
 
-    private static String TO_SHN(long num) {
+    static String TO_SHN(long num) {
         if (num == 0) {
             return "UNDEF";
         } else if (num == 0xff00L) {
@@ -81,701 +130,1177 @@ public class ElfParser extends ByteParser {
         return Long.toString(num);
     }
 
-    private static String TO_REG(long num) {
-        switch ((int) num) {
-            case 0:
-                return "zero";
-            case 1:
-                return "ra";
-            case 2:
-                return "sp";
-            case 3:
-                return "gp";
-            case 4:
-                return "tp";
-            case 5:
-                return "t0";
-            case 6:
-            case 7:
-                return "t" + (num - 5);
-            case 8:
-                return "s0";
-            case 9:
-                return "s1";
-            case 10:
-            case 11:
-            case 12:
-            case 13:
-            case 14:
-            case 15:
-            case 16:
-            case 17:
-                return "a" + (num - 10);
-            case 18:
-            case 19:
-            case 20:
-            case 21:
-            case 22:
-            case 23:
-            case 24:
-            case 25:
-            case 26:
-            case 27:
-                return "s" + (num - 16);
-            case 28:
-            case 29:
-            case 30:
-            case 31:
-                return "t" + (num - 25);
-            default:
-                return "unkown_reg";
+    // Same as String.format("%s %-15s %7s %-8s %-8s %-8s %6s %s\n", "Symbol", "Value", ...), without
+    // loading Formatter and regular expressions at startup
+    private final static String SYMTAB_HEADER = "Symbol Value              Size Type     Bind     Vis       Index Name\n";
+
+    private final static long SHF_EXECINSTR = 0x4;
+    private final static long PT_LOAD = 1;
+    private final static long PF_X = 0x1;
+
+    // Chunks smaller than this are not worth a separate task
+    private final static long MIN_CHUNK_SIZE = 64 * 1024;
+    // Bigger chunks would hold too much text in memory
+    private final static long MAX_CHUNK_SIZE = 1024 * 1024;
+
+    public ElfParser(Source source) {
+        super(source);
+    }
+
+    // Number of threads decoding code, 1 means sequential decoding
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism should be positive: " + parallelism);
         }
+        this.parallelism = parallelism;
+    }
+
+    // Whether symbol and section names are interned, which pays off when many parsers share them
+    public void setInternNames(boolean internNames) {
+        this.internNames = internNames;
+    }
+
+    // Whether jump targets inside a function are printed as "func+0x1c" instead of "LOC_xxxxx"
+    public void setRelativeTargets(boolean relativeTargets) {
+        this.relativeTargets = relativeTargets;
+    }
+
+    // Whether branch and jump targets without a symbol get a LOC_xxxxx label in the listing.
+    // Code is decoded before it is printed then, and the targets are collected from the decoded instructions
+    public void setLabels(boolean labels) {
+        this.labels = labels;
     }
 
-    private static String TO_CREG(long num) {
-        return TO_REG(num + 8);
+    // Whether parse builds the cross reference index of the listed code, returned by xrefs()
+    public void setXrefs(boolean buildXrefs) {
+        this.buildXrefs = buildXrefs;
     }
 
-    private static String TO_CSR(long num) {
-        if (num == 0x001L) {
-            return "fflags";
-        } else if (num == 0x002L) {
-            return "frm";
-        } else if (num == 0x003L) {
-            return "fcsr";
-        } else if (num == 0xc00L) {
-            return "cycle";
-        } else if (num == 0xc01L) {
-            return "time";
-        } else if (num == 0xc02L) {
-            return "instret";
-        } else if (num == 0xc80L) {
-            return "cycleh";
-        } else if (num == 0xc81L) {
-            return "timeh";
-        } else if (num == 0xc82L) {
-            return "instreth";
+    // Whether addresses built by auipc/lui pairs are resolved and printed after the instructions using them
+    public void setResolvePairs(boolean resolvePairs) {
+        this.resolvePairs = resolvePairs;
+    }
+
+    public void setRvcTable(RvcTable rvcTable) {
+        this.rvcTable = rvcTable;
+    }
+
+    // Only code regions with these names are disassembled, all of them by default
+    public void setRegions(Collection<String> names) {
+        this.selected = names != null ? new HashSet<>(names) : null;
+    }
+
+    // Only instructions starting in [start, stop) are disassembled, without the symbol table. Both are
+    // unsigned
+    public void setRange(long start, long stop) {
+        if (Long.compareUnsigned(start, stop) > 0) {
+            throw new IllegalArgumentException("Range start is after its stop: 0x" + Long.toHexString(start)
+                    + " > 0x" + Long.toHexString(stop));
         }
-        return "unknown_csr_reg";
+        this.ranged = true;
+        this.rangeStart = start;
+        this.rangeStop = stop;
     }
 
-    private final static String unknown_command = "unknown_command";
+    // Only the functions with this name are disassembled, without the symbol table
+    public void setSymbol(String symbol) {
+        this.symbol = symbol;
+    }
 
-    public ElfParser(ByteSource source) {
-        super(source);
+    // Decoded code is kept there by content, so files differing in other sections reuse it
+    public void setCache(DisassemblyCache cache) {
+        this.cache = cache;
     }
 
-    public String parse() throws ParseException {
-        parseHeader();
-        return parseSectionHeaderTable();
+    // Phase times, allocations and opcode counts go there, nothing is counted without it
+    public void setStats(Stats stats) {
+        this.stats = stats;
     }
 
-    private void parseHeader() throws ParseException {
-        moveTo(0);
-        expectMagic();
-        expect(1); // EI_CLASS = 32-bit file
-        expect(1); // EI_DATA = little endian
-        expect(1); // EI_VERSION = 1
-        moveTo(32);
-        e_shoff = read4();
-        moveTo(46);
-        e_shentsize = read2();
-        e_shnum = read2();
-        e_shstrndx = read2();
-    }
-
-    private String parseSectionHeaderTable() throws ParseException {
-        moveTo(e_shoff + e_shstrndx * e_shentsize + 16);
-        shstr_offset = read4();
-        moveTo(e_shoff);
-        // Finding .text, .symtab and .strtab
-        long symtabPos = 0;
-        long symtabSize = 0;
-        long textPos = 0;
-        long textSize = 0;
-        for (int i = 0; i < e_shnum; i++) {
-            long sh_name = read4();
-            long sh_type = read4();
-            if (sh_type == 2 && ".symtab".equals(getSectionName(sh_name))) {
-                jumpOver(8);
-                symtabPos = read4();
-                symtabSize = read4();
-                jumpOver(16);
-                continue;
-            } else if (sh_type == 1 && ".text".equals(getSectionName(sh_name))) {
-                jumpOver(4);
-                textBegin = read4();
-                textPos = read4();
-                textSize = read4();
-                jumpOver(16);
+    public Stats stats() {
+        return stats;
+    }
+
+    // Incremental mode: functions with the same bytes as in the previous build reuse its decoded
+    // instructions instead of being decoded again, and a function level diff goes to diffOutput
+    public void setPrevious(ElfParser previous, Path diffOutput) {
+        this.previous = previous;
+        this.diffOutput = diffOutput;
+    }
+
+    public void parse(Appendable out) throws ParseException, IOException {
+        prepare();
+        List<CodeRegion> code = selectedRegions();
+        if (ranged || symbol != null) {
+            parseRanges(code, out);
+            writeDiff();
+            return;
+        }
+        xrefBuilder = buildXrefs ? new XrefIndex.Builder(layout.xlen) : null;
+        PhaseEvent event = beginPhase(Stats.CODE);
+        if (code.isEmpty()) {
+            out.append(".text\n");
+        } else {
+            parseCode(code, out);
+        }
+        if (xrefBuilder != null) {
+            xrefs = xrefBuilder.build();
+            xrefBuilder = null;
+        }
+        endPhase(Stats.CODE, event, size(code));
+        out.append("\n.symtab\n");
+        if (symtabPos != 0) {
+            event = beginPhase(Stats.SYMTAB);
+            parseSymbolTable(symtabPos, symtabSize, out);
+            endPhase(Stats.SYMTAB, event, symtabSize);
+        }
+        writeDiff();
+    }
+
+    // The diff covers all functions, also when only some ranges are listed
+    private void writeDiff() throws ParseException, IOException {
+        if (previous != null) {
+            try (Writer writer = Files.newBufferedWriter(diffOutput)) {
+                diff().write(writer);
+            }
+        }
+    }
+
+    // Same listing as parse, but as data: every instruction with its raw bits and the symbol table
+    public void export(ListingSink sink) throws ParseException, IOException {
+        prepare();
+        boolean whole = !ranged && symbol == null;
+        List<Unit> pieces = new ArrayList<>();
+        if (whole) {
+            for (CodeRegion region : selectedRegions()) {
+                pieces.add(new Unit(region, true, 0, region.size, null, null));
+            }
+        } else {
+            pieces = rangePieces(selectedRegions());
+        }
+        sink.start(layout.xlen);
+        PhaseEvent event = beginPhase(Stats.CODE);
+        Source src = source.duplicate();
+        Instruction insn = new Instruction();
+        long[] counts = stats != null ? new long[Instruction.OPCODE_COUNT] : null;
+        long size = 0;
+        for (Unit piece : pieces) {
+            CodeRegion region = piece.region;
+            sink.region(region);
+            src.setPos(region.offset + piece.from);
+            for (long i = piece.from; i < piece.to; i += insn.length) {
+                long raw = readHalf(src);
+                if ((raw & 3) == 3) {
+                    raw |= readHalf(src) << 16;
+                    InstructionDecoder.decode32(raw, insn, layout.xlen);
+                } else {
+                    rvcTable.decode(raw, insn);
+                }
+                if (counts != null) {
+                    counts[insn.opcode]++;
+                }
+                sink.instruction(region.address + i, raw, insn);
+            }
+            size += piece.to - piece.from;
+        }
+        if (counts != null) {
+            stats.addOpcodes(counts);
+        }
+        endPhase(Stats.CODE, event, size);
+        if (whole && symtabPos != 0) {
+            event = beginPhase(Stats.SYMTAB);
+            for (long i = 0; i < symtabSize; i += layout.symbolSize) {
+                long symbol = symtabPos + i;
+                sink.symbol(i / layout.symbolSize, layout.st_value(source, symbol), layout.st_size(source, symbol),
+                        layout.st_info(source, symbol), layout.st_other(source, symbol),
+                        layout.st_shndx(source, symbol), strtab.get(layout.st_name(source, symbol)));
+            }
+            endPhase(Stats.SYMTAB, event, symtabSize);
+        }
+        sink.finish();
+    }
+
+    private List<CodeRegion> selectedRegions() {
+        List<CodeRegion> code = new ArrayList<>();
+        for (CodeRegion region : regions) {
+            if (selected == null || selected.contains(region.name)) {
+                code.add(region);
+            }
+        }
+        return code;
+    }
+
+    // Writes the control-flow graph of every function in the selected code regions, limited by
+    // setSymbol or setRange too. Functions are walked independently, on parallelism threads
+    public void writeControlFlow(Appendable out, boolean json) throws ParseException, IOException {
+        prepare();
+        PhaseEvent event = beginPhase(Stats.CFG);
+        CfgWriter writer = new CfgWriter(json);
+        long bytes = 0;
+        List<Supplier<StringBuilder>> tasks = new ArrayList<>();
+        for (int i = 0; i < functions.size(); i++) {
+            String name = functions.name(i);
+            long addr = functions.address(i);
+            long size = functions.symbolSize(i);
+            if (symbol != null && !symbol.equals(name)
+                    || ranged && (Long.compareUnsigned(addr, rangeStart) < 0 || Long.compareUnsigned(addr, rangeStop) >= 0)) {
                 continue;
-            } else if (sh_type == 3 && ".strtab".equals(getSectionName(sh_name))) {
-                jumpOver(8);
-                strtab_offset = read4();
-                jumpOver(20);
+            }
+            CodeRegion region = regionAt(addr, 2);
+            if (region == null || selected != null && !selected.contains(region.name)) {
                 continue;
             }
-            jumpOver(32);
+            // A function of size 0 lasts until the next one
+            long end = size > 0 ? addr + size : i + 1 < functions.size() ? functions.address(i + 1)
+                    : region.address + region.size;
+            int index = tasks.size();
+            bytes += Math.min(end, region.address + region.size) - addr;
+            Source src = source.duplicate();
+            tasks.add(() -> {
+                ControlFlowGraph graph = ControlFlowGraph.build(name, src, region, addr, end - addr,
+                        layout.xlen, rvcTable);
+                StringBuilder text = new StringBuilder();
+                writer.format(graph, index, new InstructionFormatter(functions, relativeTargets, layout.xlen), text);
+                return text;
+            });
         }
-        StringBuilder result = new StringBuilder();
-        String symTabView;
-        if (symtabPos != 0) {
-            symTabView = parseSymbolTable(symtabPos, symtabSize);
+        writer.begin(out);
+        if (parallelism == 1) {
+            for (Supplier<StringBuilder> task : tasks) {
+                out.append(task.get());
+            }
         } else {
-            symTabView = "";
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                // Same window as for decoding, graphs are written in address order
+                Deque<Future<StringBuilder>> window = new ArrayDeque<>();
+                int next = 0;
+                while (next < tasks.size() || !window.isEmpty()) {
+                    while (next < tasks.size() && window.size() < 2 * parallelism) {
+                        window.add(pool.submit(counted(tasks.get(next++)::get)));
+                    }
+                    out.append(get(window.poll()));
+                }
+            } finally {
+                pool.shutdown();
+            }
         }
-        result.append(".text\n");
-        if (textPos != 0) {
-            result.append(parseText(textPos, textSize));
+        writer.end(out);
+        endPhase(Stats.CFG, event, bytes);
+    }
+
+    // Parts of the code regions inside the requested range, or inside the functions named symbol
+    private List<Unit> rangePieces(List<CodeRegion> code) {
+        List<long[]> ranges = new ArrayList<>();
+        if (symbol != null) {
+            for (int i = 0; i < functions.size(); i++) {
+                if (symbol.equals(functions.name(i))) {
+                    long addr = functions.address(i);
+                    long size = functions.symbolSize(i);
+                    // A function of size 0 lasts until the next one, -1 is the highest unsigned address
+                    long end = size > 0 ? addr + size : i + 1 < functions.size() ? functions.address(i + 1) : -1L;
+                    ranges.add(new long[]{addr, end});
+                }
+            }
+            if (ranges.isEmpty()) {
+                throw new IllegalArgumentException("No function named " + symbol);
+            }
+        } else {
+            ranges.add(new long[]{rangeStart, rangeStop});
+        }
+        List<Unit> pieces = new ArrayList<>();
+        for (long[] range : ranges) {
+            for (CodeRegion region : code) {
+                long from = offsetIn(region, range[0]);
+                long to = offsetIn(region, range[1]);
+                if (from < to) {
+                    pieces.add(new Unit(region, true, from, to, null, null));
+                }
+            }
         }
-        result.append("\n.symtab\n").append(symTabView);
-        return result.toString();
+        return pieces;
     }
 
-    private String parseText(long textPos, long textSize) throws ParseException {
-        long prevPos = getPos();
-        moveTo(textPos);
-        StringBuilder sb = new StringBuilder();
-        pc = textBegin;
-        for (int i = 0; i < textSize; i += 2) {
-            long first = read2();
-            if ((first & 3) == 3) {
-                long second = read2();
-                i += 2;
-                String command = parseRV32IOrM((second << 16) | first);
-                String name = addrToName.getOrDefault(textBegin + i - 2, "");
-                if (name.length() > 0) {
-                    sb.append(String.format("%08x %10s: %s\n", textBegin + i - 2, name, command));
-                } else {
-                    sb.append(String.format("%08x %11s %s\n", textBegin + i - 2, name, command));
+    // Offset of addr from the start of the region, clamped to [0, size]. Addresses are unsigned, RV64
+    // kernels live at 0xffffffff80000000 and above
+    private static long offsetIn(CodeRegion region, long addr) {
+        if (Long.compareUnsigned(addr, region.address) <= 0) {
+            return 0;
+        }
+        return Long.compareUnsigned(addr - region.address, region.size) < 0 ? addr - region.address : region.size;
+    }
+
+    // Seeks straight to the requested addresses, so the work depends on the size of the range
+    // and not on the size of the code
+    private void parseRanges(List<CodeRegion> code, Appendable out) throws ParseException, IOException {
+        List<Unit> pieces = rangePieces(code);
+        PhaseEvent event = beginPhase(Stats.CODE);
+        if (collectTargets()) {
+            // Only targets inside the printed ranges can be labelled
+            localLabels = new LocalLabels(layout.xlen);
+            for (Unit piece : pieces) {
+                piece.known = new InstructionBuffer();
+                decodeText(source.duplicate(), piece.region, piece.from, piece.to, null, piece.known, null, null);
+                piece.knownTo = piece.known.size();
+                localLabels.addTargets(piece.known, piece.region.address + piece.from);
+            }
+            sealLabels(pieces);
+        }
+        for (int k = 0; k < pieces.size(); k++) {
+            Unit piece = pieces.get(k);
+            if (k > 0) {
+                out.append('\n');
+            }
+            out.append(piece.region.name).append('\n');
+            if (piece.known != null) {
+                printText(piece, out, null, newTracker());
+            } else {
+                decodeText(source.duplicate(), piece.region, piece.from, piece.to, out, null, null, newTracker());
+            }
+        }
+        long size = 0;
+        for (Unit piece : pieces) {
+            size += piece.to - piece.from;
+        }
+        endPhase(Stats.CODE, event, size);
+    }
+
+    // Keeps the targets which fall inside the listed units
+    private void sealLabels(List<Unit> units) {
+        localLabels.seal(addr -> {
+            for (Unit unit : units) {
+                if (addr >= unit.region.address + unit.from && addr < unit.region.address + unit.to) {
+                    return true;
                 }
-                pc += 4;
+            }
+            return false;
+        });
+    }
+
+    // Reads the header, finds code regions and collects function names
+    private void prepare() throws ParseException {
+        if (!prepared) {
+            PhaseEvent event = beginPhase(Stats.HEADER);
+            parseHeader();
+            endPhase(Stats.HEADER, event, 0);
+            event = beginPhase(Stats.SECTIONS);
+            if (e_shoff != 0 && e_shnum != 0) {
+                parseSectionHeaderTable();
             } else {
-                String command = parseRVC(first);
-                String name = addrToName.getOrDefault(textBegin + i, "");
-                if (name.length() > 0) {
-                    sb.append(String.format("%08x %10s: %s\n", textBegin + i, name, command));
-                } else {
-                    sb.append(String.format("%08x %11s %s\n", textBegin + i, name, command));
+                functions.seal();
+                symbols.seal();
+            }
+            if (regions.isEmpty()) {
+                parseProgramHeaderTable();
+            }
+            if (rvcTable == null) {
+                rvcTable = RvcTable.forCode(layout.xlen, size(regions));
+            }
+            endPhase(Stats.SECTIONS, event, e_shnum * e_shentsize);
+            prepared = true;
+        }
+    }
+
+    Source source() {
+        return source;
+    }
+
+    SymbolIndex functions() {
+        return functions;
+    }
+
+    // Region holding all of [addr, addr + size), or null
+    CodeRegion regionAt(long addr, long size) {
+        for (CodeRegion region : regions) {
+            if (region.contains(addr, size)) {
+                return region;
+            }
+        }
+        return null;
+    }
+
+    int xlen() {
+        return layout.xlen;
+    }
+
+    // Cross references of the last parse, null unless setXrefs(true) was called before it
+    public XrefIndex xrefs() {
+        return xrefs;
+    }
+
+    // Lists what refers to the functions named query, or to the address in it (decimal or 0x hexadecimal)
+    public void writeXrefs(String query, Appendable out) throws IOException {
+        List<Long> addrs = new ArrayList<>();
+        for (int i = 0; i < functions.size(); i++) {
+            if (query.equals(functions.name(i))) {
+                addrs.add(functions.address(i));
+            }
+        }
+        if (addrs.isEmpty()) {
+            try {
+                addrs.add(Long.decode(query));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("No function named " + query);
+            }
+        }
+        InstructionFormatter formatter = new InstructionFormatter(functions, true, layout.xlen);
+        StringBuilder place = new StringBuilder();
+        LineFormatter line = new LineFormatter();
+        for (long addr : addrs) {
+            int target = xrefs.indexOf(addr);
+            int from = target >= 0 ? xrefs.first(target) : 0;
+            int to = target >= 0 ? xrefs.first(target + 1) : 0;
+            line.clear().hex(addr, 8).append(' ').append(query).append(": ").decimal(to - from, 1)
+                    .append(to - from == 1 ? " reference\n" : " references\n").writeTo(out);
+            for (int ref = from; ref < to; ref++) {
+                place.setLength(0);
+                // Sources as func+0x1c
+                formatter.appendTarget(xrefs.source(ref), place);
+                line.clear().spaces(2).padRight(XrefIndex.kindName(xrefs.kind(ref)), 7)
+                        .hex(xrefs.source(ref), 8).append(' ').append(place).append('\n').writeTo(out);
+            }
+        }
+    }
+
+    private TextDiff diff() throws ParseException {
+        if (diff == null) {
+            previous.prepare();
+            diff = new TextDiff(previous, this);
+        }
+        return diff;
+    }
+
+    private void parseHeader() throws ParseException {
+        moveTo(0);
+        expectMagic();
+        long elfClass = read(); // EI_CLASS = 32-bit or 64-bit file
+        layout = ElfLayout.of(elfClass);
+        if (layout == null) {
+            error("Expected \"1\" or \"2\", but found \"" + elfClass);
+        }
+        expect(1); // EI_DATA = little endian
+        expect(1); // EI_VERSION = 1
+        if (rvcTable != null) {
+            rvcTable = rvcTable.forXlen(layout.xlen);
+        }
+        e_shoff = layout.e_shoff(source);
+        e_shentsize = layout.e_shentsize(source);
+        e_shnum = layout.e_shnum(source);
+        e_shstrndx = layout.e_shstrndx(source);
+    }
+
+    private void parseSectionHeaderTable() throws ParseException {
+        long shstrHeader = e_shoff + e_shstrndx * e_shentsize;
+        long shstrOffset = layout.sh_offset(source, shstrHeader);
+        long shstrSize = layout.sh_size(source, shstrHeader);
+        shstrtab = new StringTable(source, shstrOffset, shstrSize, internNames);
+        // Finding code, .symtab and .strtab
+        long strtabPos = 0;
+        long strtabSize = 0;
+        for (int i = 0; i < e_shnum; i++) {
+            long header = e_shoff + i * e_shentsize;
+            long sh_name = layout.sh_name(source, header);
+            long sh_type = layout.sh_type(source, header);
+            if (sh_type == 2 && ".symtab".equals(shstrtab.get(sh_name))) {
+                symtabPos = layout.sh_offset(source, header);
+                symtabSize = layout.sh_size(source, header);
+            } else if (sh_type == 1) {
+                String name = shstrtab.get(sh_name);
+                // .text is always shown, even without the flag
+                if ((layout.sh_flags(source, header) & SHF_EXECINSTR) != 0 || ".text".equals(name)) {
+                    regions.add(new CodeRegion(name, layout.sh_addr(source, header),
+                            layout.sh_offset(source, header), layout.sh_size(source, header)));
                 }
-                pc += 2;
+            } else if (sh_type == 3 && ".strtab".equals(shstrtab.get(sh_name))) {
+                strtabPos = layout.sh_offset(source, header);
+                strtabSize = layout.sh_size(source, header);
             }
         }
-        moveTo(prevPos);
-        return sb.toString();
+        strtab = new StringTable(source, strtabPos, strtabSize, internNames);
+        // Function names are needed for code, which is printed first
+        if (symtabPos != 0) {
+            PhaseEvent event = beginPhase(Stats.SYMBOLS);
+            collectFunctionNames(symtabPos, symtabSize);
+            endPhase(Stats.SYMBOLS, event, symtabSize);
+        } else {
+            functions.seal();
+            symbols.seal();
+        }
     }
 
-    private String parseSymbolTable(long symtabPos, long symtabSize) throws ParseException {
-        long prevPos = getPos();
-        moveTo(symtabPos);
-        StringBuilder symtab = new StringBuilder();
-        symtab.append(String.format("%s %-15s %7s %-8s %-8s %-8s %6s %s\n", "Symbol", "Value", "Size",
-                "Type", "Bind", "Vis", "Index", "Name"));
-        for (int i = 0; i < symtabSize; i += 16) {
-            long st_name = read4();
-            long st_value = read4();
-            long st_size = read4();
-            long st_info = read();
-            long st_other = read();
-            long st_shndx = read2();
+    // Stripped files have no sections to tell where code is, executable PT_LOAD segments are used then
+    private void parseProgramHeaderTable() throws ParseException {
+        long e_phoff = layout.e_phoff(source);
+        long e_phentsize = layout.e_phentsize(source);
+        long e_phnum = layout.e_phnum(source);
+        if (e_phoff == 0) {
+            return;
+        }
+        for (int i = 0; i < e_phnum; i++) {
+            long header = e_phoff + i * e_phentsize;
+            if (layout.p_type(source, header) == PT_LOAD && (layout.p_flags(source, header) & PF_X) != 0) {
+                regions.add(new CodeRegion("segment" + i, layout.p_vaddr(source, header),
+                        layout.p_offset(source, header), layout.p_filesz(source, header)));
+            }
+        }
+    }
 
-            long st_bind = st_info >> 4;
-            long st_type = st_info & 0xf;
-            String index = TO_SHN(st_shndx);
-            String name = getName(st_name);
+    // Part of the listing: a range of a region to decode, or a whole region whose instructions are known.
+    // A region is either known, or split into units which are decoded in address order
+    private static final class Unit {
+        final CodeRegion region;
+        final boolean first;
+        final long from;
+        final long to;
+        InstructionBuffer known;
+        // Range of the known instructions printed by this unit, the first one is at "from"
+        int knownFrom;
+        int knownTo;
+        // Cache key of the region when its decoded instructions should be stored
+        final String key;
+        boolean last;
+        // Where decoding really starts, the previous unit may end with an instruction crossing "from"
+        long entry;
 
-            symtab.append(String.format("[%4d] 0x%-15s %5d %-8s %-8s %-8s %6s %s\n", i / 16, Long.toHexString(st_value),
-                    st_size, TO_STT(st_type), TO_STB(st_bind), TO_STV(st_other & 3), index, name));
+        Unit(CodeRegion region, boolean first, long from, long to, InstructionBuffer known, String key) {
+            this.region = region;
+            this.first = first;
+            this.from = from;
+            this.to = to;
+            this.known = known;
+            this.knownTo = known != null ? known.size() : 0;
+            this.key = key;
+            this.entry = from;
+        }
+    }
 
-            if (TO_STT(st_type).equals("FUNC")) {
-                addrToName.put(st_value, name);
+    private void parseCode(List<CodeRegion> code, Appendable out) throws ParseException, IOException {
+        // Regions already decoded before, and the total size of the others
+        List<InstructionBuffer> known = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        long decodeSize = 0;
+        // Regions are only decoded before printing with --cache, --labels or --resolve. --previous only
+        // compares bytes then, instructions are copied from the previous build when it is in the cache
+        boolean decoding = cache != null || collectTargets();
+        PhaseEvent event = decoding ? beginPhase(Stats.DECODE) : null;
+        long decoded = 0;
+        for (CodeRegion region : code) {
+            String key = cache != null ? codeKey(region) : null;
+            InstructionBuffer insns = key != null ? readCached(key) : null;
+            if (insns == null && (previous != null && cache != null || collectTargets())) {
+                insns = previous != null && cache != null ? decodeIncrementally(region) : decodeWhole(region);
+                decoded += region.size;
+                if (key != null) {
+                    store(key, insns);
+                }
             }
+            known.add(insns);
+            keys.add(insns == null ? key : null);
+            decodeSize += insns == null || collectTargets() ? region.size : 0;
+        }
+        if (collectTargets()) {
+            // First pass over the decoded instructions, the second one prints them
+            localLabels = new LocalLabels(layout.xlen);
+            List<Unit> whole = new ArrayList<>();
+            for (int r = 0; r < code.size(); r++) {
+                localLabels.addTargets(known.get(r), code.get(r).address);
+                whole.add(new Unit(code.get(r), true, 0, code.get(r).size, null, null));
+            }
+            sealLabels(whole);
+        }
+        if (decoding) {
+            endPhase(Stats.DECODE, event, decoded);
+        }
+        boolean parallel = parallelism > 1 && decodeSize >= 2 * MIN_CHUNK_SIZE;
+        long chunkSize = Math.min(MAX_CHUNK_SIZE, Math.max(MIN_CHUNK_SIZE, decodeSize / (parallelism * 4L))) & ~1L;
+        List<Unit> units = new ArrayList<>();
+        for (int r = 0; r < code.size(); r++) {
+            CodeRegion region = code.get(r);
+            String key = keys.get(r);
+            InstructionBuffer insns = known.get(r);
+            if (insns != null && collectTargets() && parallel) {
+                // Printed in chunks as well
+                long from = 0;
+                int first = 0;
+                long size = 0;
+                for (int k = 0; k < insns.size(); k++) {
+                    size += insns.length(k);
+                    if (size - from >= chunkSize || k == insns.size() - 1) {
+                        Unit unit = new Unit(region, first == 0, from, size, insns, null);
+                        unit.knownFrom = first;
+                        unit.knownTo = k + 1;
+                        units.add(unit);
+                        from = size;
+                        first = k + 1;
+                    }
+                }
+                if (insns.size() == 0) {
+                    units.add(new Unit(region, true, 0, 0, insns, null));
+                }
+            } else if (insns != null || region.size == 0) {
+                units.add(new Unit(region, true, 0, 0, insns, key));
+            } else {
+                // A sequential run streams each region at once, unless decoded instructions are kept
+                long step = parallel ? chunkSize : key != null ? MAX_CHUNK_SIZE : region.size;
+                for (long from = 0; from < region.size; from += step) {
+                    units.add(new Unit(region, from == 0, from, Math.min(region.size, from + step), null, key));
+                }
+            }
+            units.get(units.size() - 1).last = true;
+        }
+        if (parallel) {
+            parseUnitsParallel(units, out);
+        } else {
+            parseUnits(units, out);
         }
-        moveTo(prevPos);
-        return symtab.toString();
     }
 
-    String getName(long offset) throws ParseException {
-        long prevPos = getPos();
-        moveTo(strtab_offset);
-        jumpOver(offset);
-        StringBuilder name = new StringBuilder();
-        do {
-            name.append((char) read());
-        } while (name.charAt(name.length() - 1) != 0);
-        name.deleteCharAt(name.length() - 1);
-        moveTo(prevPos);
-        return name.toString();
+    private String codeKey(CodeRegion region) {
+        // 2 more bytes for the last instruction, which may cross the end of the region
+        return new DisassemblyCache.Key("text").add(layout.xlen).add(region.address)
+                .add(source, region.offset, region.size + 2).hex();
     }
 
-    String getSectionName(long offset) throws ParseException {
+    private void parseUnits(List<Unit> units, Appendable out) throws ParseException, IOException {
         long prevPos = getPos();
-        moveTo(shstr_offset);
-        jumpOver(offset);
-        StringBuilder name = new StringBuilder();
-        do {
-            name.append((char) read());
-        } while (name.charAt(name.length() - 1) != 0);
-        name.deleteCharAt(name.length() - 1);
+        UnitWriter writer = new UnitWriter(out);
+        try {
+            long entry = 0;
+            ConstantTracker tracker = null;
+            for (Unit unit : units) {
+                writer.begin(unit);
+                if (unit.first) {
+                    tracker = newTracker();
+                }
+                InstructionBuffer insns = unit.key != null ? new InstructionBuffer() : null;
+                if (unit.known != null) {
+                    printText(unit, out, xrefBuilder, tracker);
+                } else if (unit.to > unit.from) {
+                    entry = decodeText(source, unit.region, unit.first ? 0 : entry, unit.to, out, insns, xrefBuilder,
+                            tracker);
+                }
+                writer.end(unit, insns);
+            }
+        } finally {
+            writer.close();
+        }
         moveTo(prevPos);
-        return name.toString();
     }
 
-    private void expectMagic() throws ParseException {
-        // Magic 7f 45 4c 46
-        expect(0x7f);
-        expect(0x45);
-        expect(0x4c);
-        expect(0x46);
-    }
+    private void parseUnitsParallel(List<Unit> units, Appendable out) throws ParseException, IOException {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        UnitWriter writer = new UnitWriter(out);
+        try {
+            // A unit is entered either at its first byte or 2 bytes later, when the previous unit
+            // ends with a 32-bit instruction crossing the edge. Scan both cases at once
+            List<Callable<long[]>> scans = new ArrayList<>();
+            for (Unit unit : units) {
+                Source src = source.duplicate();
+                scans.add(counted(() -> unit.known != null ? null
+                        : TextScanner.get().scan(src, unit.region.offset, unit.from, unit.to)));
+            }
+            List<long[]> exits = invokeAll(pool, scans);
 
-    private String parseRV32IOrM(long mask) {
-        long opcode = bitSubstr(mask, 6, 0);
-        long funct7 = bitSubstr(mask, 31, 25);
-        if (opcode == 0b0110011 && funct7 == 1) {
-            return parseRV32M(mask);
-        }
-        return parseRV32I(mask);
-    }
-
-    private long bitSubstr(long value, int r, int l) {
-        long andMask = (1L << (r + 1)) - 1 - ((1L << l) - 1);
-        return (andMask & value) >> l;
-    }
-
-    private String normalView(String[] command) {
-        StringBuilder sb = new StringBuilder();
-        if (command.length == 1) {
-            return command[0];
-        }
-        sb.append(command[0]).append(' ');
-        for (int i = 1; i < command.length - 1; i++) {
-            sb.append(command[i]).append(", ");
-        }
-        sb.append(command[command.length - 1]);
-        return sb.toString();
-    }
-
-    private String normalViewAddr(String[] command) {
-        StringBuilder sb = new StringBuilder();
-        sb.append(command[0]).append(' ');
-        for (int i = 1; i < command.length - 2; i++) {
-            sb.append(command[i]).append(", ");
-        }
-        if (command.length > 2) {
-            sb.append(command[command.length - 2]).append(", ");
-        }
-        long addr = Long.parseLong(command[command.length - 1], 16);
-        sb.append(addrToName.getOrDefault(addr, String.format("LOC_%05x", addr)));
-        return sb.toString();
-    }
-
-    private String loadStoreView(String[] command) {
-        StringBuilder sb = new StringBuilder();
-        sb.append(command[0]).append(' ');
-        for (int i = 1; i < command.length - 2; i++) {
-            sb.append(command[i]).append(", ");
-        }
-        sb.append(command[command.length - 2]).append('(').append(command[command.length - 1]).append(')');
-        return sb.toString();
-    }
-
-    private String parseRV32I(long mask) {
-        long rd = bitSubstr(mask, 11, 7);
-        long rs1 = bitSubstr(mask, 19, 15);
-        long rs2 = bitSubstr(mask, 24, 20);
-        long funct7 = bitSubstr(mask,31, 25);
-        long funct3 = bitSubstr(mask, 14, 12);
-        long opcode = bitSubstr(mask, 6, 0);
-        long imm110 = bitSubstr(mask, 31, 20);
-        String rdReg = TO_REG(rd);
-        String rs1Reg = TO_REG(rs1);
-        String rs2Reg = TO_REG(rs2);
-        String offset;
-        switch ((int) opcode) {
-            case 0b0110011:
-                if (funct7 == 0) {
-                    switch ((int) funct3) {
-                        case 0b000:
-                            return normalView(new String[]{"add", rdReg, rs1Reg, rs2Reg});
-                        case 0b001:
-                            return normalView(new String[]{"sll", rdReg, rs1Reg, rs2Reg});
-                        case 0b010:
-                            return normalView(new String[]{"slt", rdReg, rs1Reg, rs2Reg});
-                        case 0b011:
-                            return normalView(new String[]{"sltu", rdReg, rs1Reg, rs2Reg});
-                        case 0b100:
-                            return normalView(new String[]{"xor", rdReg, rs1Reg, rs2Reg});
-                        case 0b101:
-                            return normalView(new String[]{"srl", rdReg, rs1Reg, rs2Reg});
-                        case 0b110:
-                            return normalView(new String[]{"or", rdReg, rs1Reg, rs2Reg});
-                        case 0b111:
-                            return normalView(new String[]{"and", rdReg, rs1Reg, rs2Reg});
-                        default:
-                            return unknown_command;
-                    }
-                } else if (funct7 == (1L << 5)) {
-                    if (funct3 == 0b000) {
-                        return normalView(new String[]{"sub", rdReg, rs1Reg, rs2Reg});
-                    } else if (funct3 == 0b101) {
-                        return normalView(new String[]{"sra", rdReg, rs1Reg, rs2Reg});
-                    }
-                    return unknown_command;
-                } else {
-                    return unknown_command;
+            // Resync unit edges in address order
+            for (int k = 1; k < units.size(); k++) {
+                Unit unit = units.get(k);
+                if (!unit.first && unit.known == null) {
+                    Unit prev = units.get(k - 1);
+                    unit.entry = exits.get(k - 1)[prev.entry == prev.from ? 0 : 1];
                 }
-            case 0b0010011:
-                switch ((int) funct3) {
-                    case 0b000:
-                        return normalView(new String[]{"addi", rdReg, rs1Reg, getImmediateI(mask)});
-                    case 0b010:
-                        return normalView(new String[]{"slti", rdReg, rs1Reg, getImmediateI(mask)});
-                    case 0b011:
-                        return normalView(new String[]{"sltiu", rdReg, rs1Reg, getImmediateI(mask)});
-                    case 0b100:
-                        return normalView(new String[]{"xori", rdReg, rs1Reg, getImmediateI(mask)});
-                    case 0b110:
-                        return normalView(new String[]{"ori", rdReg, rs1Reg, getImmediateI(mask)});
-                    case 0b111:
-                        return normalView(new String[]{"andi", rdReg, rs1Reg, getImmediateI(mask)});
-                    case 0b001:
-                        if (funct7 == 0) {
-                            return normalView(new String[]{"slli", rdReg, rs1Reg, Long.toString(rs2)});
+            }
+
+            // Only a window of units is decoded ahead of the writer, so memory stays bounded
+            Deque<Future<DecodedChunk>> window = new ArrayDeque<>();
+            // Registers at the end of the written units, for the pending annotations of the next one
+            ConstantTracker tracker = null;
+            int next = 0;
+            while (next < units.size() || !window.isEmpty()) {
+                while (next < units.size() && window.size() < 2 * parallelism) {
+                    Unit unit = units.get(next);
+                    Source src = source.duplicate();
+                    window.add(pool.submit(counted(() -> {
+                        DecodedChunk chunk = new DecodedChunk(unit.key != null,
+                                xrefBuilder != null ? new XrefIndex.Builder(layout.xlen) : null, newTracker());
+                        if (chunk.tracker != null && !unit.first) {
+                            chunk.tracker.inherit();
                         }
-                        return unknown_command;
-                    case 0b101:
-                        if (funct7 == (1L << 5)) {
-                            return normalView(new String[]{"srai", rdReg, rs1Reg, Long.toString(rs2)});
-                        } else if (funct7 == 0) {
-                            return normalView(new String[]{"srli", rdReg, rs1Reg, Long.toString(rs2)});
+                        if (unit.known != null) {
+                            printText(unit, chunk.text, chunk.xrefs, chunk.tracker);
+                        } else if (unit.to > unit.entry) {
+                            decodeText(src, unit.region, unit.entry, unit.to, chunk.text, chunk.insns, chunk.xrefs,
+                                    chunk.tracker);
                         }
-                        return unknown_command;
-                    default:
-                        return unknown_command;
+                        return chunk;
+                    })));
+                    next++;
                 }
-            case 0b0100011:
-                switch ((int) funct3) {
-                    case 0b000:
-                        return loadStoreView(new String[]{"sb", rs2Reg, getImmediateS(mask), rs1Reg});
-                    case 0b001:
-                        return loadStoreView(new String[]{"sh", rs2Reg, getImmediateS(mask), rs1Reg});
-                    case 0b010:
-                        return loadStoreView(new String[]{"sw", rs2Reg, getImmediateS(mask), rs1Reg});
-                    default:
-                        return unknown_command;
+                Unit unit = units.get(next - window.size());
+                DecodedChunk chunk = get(window.poll());
+                writer.begin(unit);
+                if (chunk.tracker != null) {
+                    if (unit.first) {
+                        tracker = newTracker();
+                    }
+                    tracker.splice(chunk.tracker, chunk.text, out);
+                } else {
+                    out.append(chunk.text);
                 }
-            case 0b0000011:
-                switch ((int) funct3) {
-                    case 0b000:
-                        return loadStoreView(new String[]{"lb", rdReg, getImmediateI(mask), rs1Reg});
-                    case 0b001:
-                        return loadStoreView(new String[]{"lh", rdReg, getImmediateI(mask), rs1Reg});
-                    case 0b010:
-                        return loadStoreView(new String[]{"lw", rdReg, getImmediateI(mask), rs1Reg});
-                    case 0b100:
-                        return loadStoreView(new String[]{"lbu", rdReg, getImmediateI(mask), rs1Reg});
-                    case 0b101:
-                        return loadStoreView(new String[]{"lhu", rdReg, getImmediateI(mask), rs1Reg});
-                    default:
-                        return unknown_command;
+                if (chunk.xrefs != null) {
+                    xrefBuilder.append(chunk.xrefs);
                 }
-            case 0b1100011:
-                offset = Long.toHexString(pc + Long.parseLong(getImmediateB(mask)));
-                switch ((int) funct3) {
-                    case 0b000:
-                        return normalViewAddr(new String[]{"beq", rs1Reg, rs2Reg, offset});
-                    case 0b001:
-                        return normalViewAddr(new String[]{"bne", rs1Reg, rs2Reg, offset});
-                    case 0b100:
-                        return normalViewAddr(new String[]{"blt", rs1Reg, rs2Reg, offset});
-                    case 0b101:
-                        return normalViewAddr(new String[]{"bge", rs1Reg, rs2Reg, offset});
-                    case 0b110:
-                        return normalViewAddr(new String[]{"bltu", rs1Reg, rs2Reg, offset});
-                    case 0b111:
-                        return normalViewAddr(new String[]{"bgeu", rs1Reg, rs2Reg, offset});
-                    default:
-                        return unknown_command;
+                writer.end(unit, chunk.insns);
+            }
+        } finally {
+            pool.shutdown();
+            writer.close();
+        }
+    }
+
+    // Prints region headers around units and stores decoded regions in the cache
+    private final class UnitWriter {
+        private final Appendable out;
+        private boolean started;
+        private DisassemblyCache.Entry entry;
+        private DataOutputStream record;
+
+        UnitWriter(Appendable out) {
+            this.out = out;
+        }
+
+        void begin(Unit unit) throws IOException {
+            if (!unit.first) {
+                return;
+            }
+            if (started) {
+                out.append('\n');
+            }
+            started = true;
+            out.append(unit.region.name).append('\n');
+            if (xrefBuilder != null) {
+                // An auipc at the end of the previous region does not pair with this one
+                xrefBuilder.gap();
+            }
+            if (unit.key != null) {
+                entry = cache.create("text", unit.key);
+                record = new DataOutputStream(new BufferedOutputStream(entry.out()));
+            }
+        }
+
+        void end(Unit unit, InstructionBuffer insns) throws IOException {
+            if (entry == null) {
+                return;
+            }
+            if (insns != null) {
+                insns.writeTo(record);
+            }
+            if (unit.last) {
+                InstructionBuffer.writeEnd(record);
+                record.flush();
+                entry.commit();
+                entry = null;
+            }
+        }
+
+        // Drops an unfinished cache entry
+        void close() throws IOException {
+            if (entry != null) {
+                entry.close();
+                entry = null;
+            }
+        }
+    }
+
+    // The decoded region of the previous build when the cache has it, null otherwise
+    private InstructionBuffer cachedRegion(CodeRegion region) {
+        return cache != null ? readCached(codeKey(region)) : null;
+    }
+
+    // Decodes a whole region without printing it, in chunks on several threads when it is big enough
+    private InstructionBuffer decodeWhole(CodeRegion region) throws ParseException, IOException {
+        if (parallelism == 1 || region.size < 2 * MIN_CHUNK_SIZE) {
+            InstructionBuffer insns = new InstructionBuffer();
+            decodeText(source.duplicate(), region, 0, region.size, null, insns, null, null);
+            return insns;
+        }
+        long chunkSize = Math.min(MAX_CHUNK_SIZE, Math.max(MIN_CHUNK_SIZE, region.size / (parallelism * 4L))) & ~1L;
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            // Chunk edges are resynced the same way as in parseUnitsParallel
+            List<Callable<long[]>> scans = new ArrayList<>();
+            for (long from = 0; from < region.size; from += chunkSize) {
+                long start = from;
+                long end = Math.min(region.size, from + chunkSize);
+                Source src = source.duplicate();
+                scans.add(counted(() -> {
+                    long[] exits = TextScanner.get().scan(src, region.offset, start, end);
+                    return new long[]{start, end, exits[0], exits[1]};
+                }));
+            }
+            List<long[]> chunks = invokeAll(pool, scans);
+            long entry = 0;
+            List<Callable<InstructionBuffer>> decodes = new ArrayList<>();
+            for (long[] chunk : chunks) {
+                long from = entry;
+                Source src = source.duplicate();
+                decodes.add(counted(() -> {
+                    InstructionBuffer insns = new InstructionBuffer();
+                    decodeText(src, region, from, chunk[1], null, insns, null, null);
+                    return insns;
+                }));
+                entry = chunk[entry == chunk[0] ? 2 : 3];
+            }
+            InstructionBuffer insns = new InstructionBuffer();
+            for (InstructionBuffer chunk : invokeAll(pool, decodes)) {
+                insns.addAll(chunk);
+            }
+            return insns;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // Instructions of a region of the previous build and the offset of each one, plus the end of the last one
+    private static final class PreviousRegion {
+        final InstructionBuffer insns;
+        final long[] offsets;
+
+        PreviousRegion(InstructionBuffer insns) {
+            this.insns = insns;
+            offsets = new long[insns.size() + 1];
+            for (int k = 0; k < insns.size(); k++) {
+                offsets[k + 1] = offsets[k] + insns.length(k);
+            }
+        }
+    }
+
+    private static final PreviousRegion NOT_CACHED = new PreviousRegion(new InstructionBuffer());
+
+    // Walks a region like decodeText, but the functions which did not change since the previous
+    // build are copied from its cached instructions when the walk enters them at their first byte
+    private InstructionBuffer decodeIncrementally(CodeRegion region) throws ParseException, IOException {
+        TextDiff diff = diff();
+        InstructionBuffer insns = new InstructionBuffer();
+        Source src = source.duplicate();
+        int reused = 0;
+        long i = 0;
+        while (i < region.size) {
+            while (reused < diff.reusedCount() && diff.reusedAddress(reused) < region.address + i) {
+                reused++;
+            }
+            if (reused < diff.reusedCount() && diff.reusedAddress(reused) == region.address + i
+                    && region.contains(diff.reusedAddress(reused), diff.reusedSize(reused))) {
+                // Reusable only when the previous walk had instruction boundaries at both ends too
+                long size = diff.reusedSize(reused);
+                CodeRegion oldRegion = previous.regionAt(diff.reusedOldAddress(reused), size);
+                PreviousRegion old = previousRegions.get(oldRegion);
+                if (old == null) {
+                    // The same bytes decode the same, so without a cached decoding the previous build is
+                    // not decoded just to copy it
+                    InstructionBuffer cached = previous.cachedRegion(oldRegion);
+                    old = cached != null ? new PreviousRegion(cached) : NOT_CACHED;
+                    previousRegions.put(oldRegion, old);
                 }
-            case 0b1100111:
-                if (funct3 == 0b000) {
-                    return loadStoreView(new String[]{"jalr", rdReg, getImmediateI(mask), rs1Reg});
+                if (old == NOT_CACHED) {
+                    reused++;
+                    continue;
                 }
-                return unknown_command;
-            case 0b1101111:
-                offset = Long.toHexString(pc + Long.parseLong(getImmediateJ(mask)));
-                return normalViewAddr(new String[]{"jal", rdReg, offset});
-            case 0b0010111:
-                return normalView(new String[]{"auipc", rdReg, getImmediateU(mask)});
-            case 0b0110111:
-                return normalView(new String[]{"lui", rdReg, getImmediateU(mask)});
-            case 0b1110011:
-                switch ((int) funct3) {
-                    case 0b000:
-                        if (rs1 == 0 && rd == 0) {
-                            if (imm110 == 0) {
-                                return normalView(new String[]{"ecall"});
-                            } else if (imm110 == 1) {
-                                return normalView(new String[]{"ebreak"});
-                            }
-                            return unknown_command;
-                        }
-                    case 0b001:
-                        return normalView(new String[]{"csrrw", rdReg, TO_CSR(imm110), rs1Reg});
-                    case 0b010:
-                        return normalView(new String[]{"csrrs", rdReg, TO_CSR(imm110), rs1Reg});
-                    case 0b011:
-                        return normalView(new String[]{"csrrc", rdReg, TO_CSR(imm110), rs1Reg});
-                    case 0b101:
-                        return normalView(new String[]{"csrrwi", rdReg, TO_CSR(imm110), Long.toString(rs1)});
-                    case 0b110:
-                        return normalView(new String[]{"csrrsi", rdReg, TO_CSR(imm110), Long.toString(rs1)});
-                    case 0b111:
-                        return normalView(new String[]{"csrrci", rdReg, TO_CSR(imm110), Long.toString(rs1)});
+                long oldFrom = diff.reusedOldAddress(reused) - oldRegion.address;
+                int from = Arrays.binarySearch(old.offsets, oldFrom);
+                int to = Arrays.binarySearch(old.offsets, oldFrom + size);
+                if (from >= 0 && to >= 0) {
+                    insns.addRange(old.insns, from, to);
+                    i += size;
+                    continue;
                 }
-            default:
-                return unknown_command;
+                reused++;
+            }
+            long next = reused < diff.reusedCount() ? diff.reusedAddress(reused) - region.address : region.size;
+            i = decodeText(src, region, i, Math.min(next, region.size), null, insns, null, null);
         }
+        return insns;
     }
 
-    private String getImmediateI(long mask) {
-        long res = 0;
-        if (bitSubstr(mask, 31, 31) > 0) {
-            res = 0b011_111_111_111_111_111_111_000_000_000_000L;
+    // Null if there is no such entry or it is unreadable, the caller then decodes again
+    private InstructionBuffer readCached(String key) {
+        Path entry = cache.lookup("text", key);
+        if (entry == null) {
+            return null;
         }
-        res |= bitSubstr(mask, 31, 20);
-        if (bitSubstr(res, 31, 31) > 0) {
-            res -= (1L << 32);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(entry)))) {
+            InstructionBuffer insns = new InstructionBuffer();
+            InstructionBuffer block = new InstructionBuffer();
+            while (block.readFrom(in)) {
+                insns.addAll(block);
+            }
+            return insns;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void store(String key, InstructionBuffer insns) throws IOException {
+        try (DisassemblyCache.Entry entry = cache.create("text", key)) {
+            DataOutputStream record = new DataOutputStream(new BufferedOutputStream(entry.out()));
+            insns.writeTo(record);
+            InstructionBuffer.writeEnd(record);
+            record.flush();
+            entry.commit();
         }
-        return Long.toString(res);
     }
 
-    private String getImmediateS(long mask) {
-        long res = 0;
-        if (bitSubstr(mask, 31, 31) > 0) {
-            res = 0b011_111_111_111_111_111_111_000_000_000_000L;
+    private void printText(Unit unit, Appendable out, XrefIndex.Builder xrefs, ConstantTracker tracker)
+            throws IOException {
+        Instruction insn = new Instruction();
+        InstructionFormatter formatter = new InstructionFormatter(functions, relativeTargets, layout.xlen);
+        StringBuilder command = new StringBuilder();
+        LineFormatter line = new LineFormatter();
+        long[] counts = stats != null ? new long[Instruction.OPCODE_COUNT] : null;
+        long addr = unit.region.address + unit.from;
+        for (int k = unit.knownFrom; k < unit.knownTo; k++) {
+            unit.known.get(k, insn);
+            if (counts != null) {
+                counts[insn.opcode]++;
+            }
+            if (xrefs != null) {
+                xrefs.add(insn, addr);
+            }
+            printLine(insn, addr, formatter, command, line, out, tracker);
+            addr += insn.length;
         }
-        res |= (bitSubstr(mask, 31, 25) << 5);
-        res |= bitSubstr(mask, 11, 7);
-        if (bitSubstr(res, 31, 31) > 0) {
-            res -= (1L << 32);
+        if (counts != null) {
+            stats.addOpcodes(counts);
         }
-        return Long.toString(res);
     }
 
-    private String getImmediateB(long mask) {
-        long res = 0;
-        if (bitSubstr(mask, 31, 31) > 0) {
-            res = 0b011_111_111_111_111_111_111_000_000_000_000L;
+    // Decodes every instruction starting in [from, to) of the region, the last one may end after "to".
+    // Decoded instructions are printed to out with tracker annotations, added to record and to xrefs,
+    // each of them may be null. Printed instructions are counted in stats.
+    // Returns the offset right after the last decoded instruction
+    private long decodeText(Source src, CodeRegion region, long from, long to, Appendable out,
+                            InstructionBuffer record, XrefIndex.Builder xrefs, ConstantTracker tracker)
+            throws ParseException, IOException {
+        src.setPos(region.offset + from);
+        Instruction insn = new Instruction();
+        InstructionFormatter formatter = new InstructionFormatter(functions, relativeTargets, layout.xlen);
+        StringBuilder command = new StringBuilder();
+        LineFormatter line = new LineFormatter();
+        long[] counts = stats != null && out != null ? new long[Instruction.OPCODE_COUNT] : null;
+        long i = from;
+        while (i < to) {
+            long addr = region.address + i;
+            long first = readHalf(src);
+            if ((first & 3) == 3) {
+                long second = readHalf(src);
+                InstructionDecoder.decode32((second << 16) | first, insn, layout.xlen);
+            } else {
+                rvcTable.decode(first, insn);
+            }
+            i += insn.length;
+            if (record != null) {
+                record.add(insn);
+            }
+            if (xrefs != null) {
+                xrefs.add(insn, addr);
+            }
+            if (out != null) {
+                if (counts != null) {
+                    counts[insn.opcode]++;
+                }
+                printLine(insn, addr, formatter, command, line, out, tracker);
+            }
         }
-        res |= (bitSubstr(mask, 7, 7) << 11);
-        res |= (bitSubstr(mask, 30, 25) << 5);
-        res |= (bitSubstr(mask, 11, 8) << 1);
-        if (bitSubstr(res, 31, 31) > 0) {
-            res -= (1L << 32);
+        if (counts != null) {
+            stats.addOpcodes(counts);
         }
-        return Long.toString(res);
+        return i;
     }
 
-    private String getImmediateU(long mask) {
-        long res = bitSubstr(mask, 31, 12) << 12;
-        if (bitSubstr(res, 31, 31) > 0) {
-            res -= (1L << 32);
+    private void printLine(Instruction insn, long addr, InstructionFormatter formatter, StringBuilder command,
+                           LineFormatter line, Appendable out, ConstantTracker tracker) throws IOException {
+        command.setLength(0);
+        formatter.format(insn, addr, command);
+        String name = functions.get(addr);
+        boolean target = (name == null || name.length() == 0) && localLabels != null && localLabels.contains(addr);
+        boolean label = labels && target && formatter.printsLocation(addr);
+        // Registers set on the way to a target may not hold when it is reached from elsewhere
+        boolean pending = tracker != null && tracker.next(insn, addr, name != null || target, command);
+        line.clear().hex(addr, 8).append(' ');
+        if (name != null && name.length() > 0) {
+            line.padLeft(name, 10).append(": ");
+        } else if (label) {
+            // Same as "%10s" of the LOC_%05x target
+            int digits = Math.max(5, (64 - Long.numberOfLeadingZeros(addr) + 3) / 4);
+            line.spaces(10 - 4 - digits).append("LOC_").hex(addr, 5).append(": ");
+        } else {
+            line.spaces(12);
+        }
+        line.append(command).append('\n').writeTo(out);
+        if (pending) {
+            // Only chunks decoded in parallel have pending annotations, they are printed to a StringBuilder
+            tracker.markPending(((CharSequence) out).length() - 1);
         }
-        return Long.toString(res);
     }
 
-    private String getImmediateJ(long mask) {
-        long res = 0;
-        if (bitSubstr(mask, 31, 31) > 0) {
-            res = 0b011_111_111_111_100_000_000_000_000_000_000L;
+    // Phases are timed in stats and recorded as JFR events. Events are only created once flight recording
+    // was started, loading them costs more than disassembling a small file
+    private PhaseEvent beginPhase(int phase) {
+        if (stats != null) {
+            stats.begin(phase);
         }
-        res |= (bitSubstr(mask, 19, 12) << 12);
-        res |= (bitSubstr(mask, 20, 20) << 11);
-        res |= (bitSubstr(mask, 30, 25) << 5);
-        res |= (bitSubstr(mask, 24, 21) << 1);
-        if (bitSubstr(res, 31, 31) > 0) {
-            res -= (1L << 32);
+        if (!FlightRecorder.isInitialized()) {
+            return null;
         }
-        return Long.toString(res);
+        PhaseEvent event = new PhaseEvent();
+        event.begin();
+        return event;
     }
 
-    private String parseRV32M(long mask) {
-        long funct3 = bitSubstr(mask,14, 12);
-        long rd = bitSubstr(mask, 11, 7);
-        long rs1 = bitSubstr(mask, 19, 15);
-        long rs2 = bitSubstr(mask, 24, 20);
-        String rdReg = TO_REG(rd);
-        String rs1Reg = TO_REG(rs1);
-        String rs2Reg = TO_REG(rs2);
-        switch ((int) funct3) {
-            case 0:
-                return normalView(new String[]{"mul", rdReg, rs1Reg, rs2Reg});
-            case 1:
-                return normalView(new String[]{"mulh", rdReg, rs1Reg, rs2Reg});
-            case 2:
-                return normalView(new String[]{"mulhsu", rdReg, rs1Reg, rs2Reg});
-            case 3:
-                return normalView(new String[]{"mulhu", rdReg, rs1Reg, rs2Reg});
-            case 4:
-                return normalView(new String[]{"div", rdReg, rs1Reg, rs2Reg});
-            case 5:
-                return normalView(new String[]{"divu", rdReg, rs1Reg, rs2Reg});
-            case 6:
-                return normalView(new String[]{"rem", rdReg, rs1Reg, rs2Reg});
-            case 7:
-                return normalView(new String[]{"remu", rdReg, rs1Reg, rs2Reg});
-            default:
-                return unknown_command;
+    // event may be null
+    private void endPhase(int phase, PhaseEvent event, long bytes) {
+        if (stats != null) {
+            stats.end(phase, bytes);
+        }
+        if (event != null && event.shouldCommit()) {
+            event.phase = Stats.phaseName(phase);
+            event.bytes = bytes;
+            event.commit();
         }
     }
 
-    private long unshuffle(long mask, int[] order, boolean signed) {
-        long result = 0;
-        for (int i = 0; i < order.length; i++) {
-            long hit = Math.min(1, mask & (1L << i));
-            if (i == order.length - 1 && signed) {
-                result -= (hit << order[order.length - i - 1]);
-            } else {
-                result += (hit << order[order.length - i - 1]);
+    // The task charges what it allocates to the phase running now
+    private <T> Callable<T> counted(Callable<T> task) {
+        if (stats == null) {
+            return task;
+        }
+        int phase = stats.phase();
+        return () -> {
+            long allocated = Stats.allocatedBytes();
+            try {
+                return task.call();
+            } finally {
+                stats.addAllocated(phase, Stats.allocatedBytes() - allocated);
             }
+        };
+    }
+
+    private static long size(List<CodeRegion> code) {
+        long size = 0;
+        for (CodeRegion region : code) {
+            size += region.size;
         }
-        return result;
+        return size;
     }
 
-    // Immediate bits' orders for RVC
-    private static final int[] immOrder1 = new int[]{5, 4, 9, 8, 7, 6, 2, 3};
-    private static final int[] immOrder2 = new int[]{5, 4, 3, 2, 6};
-    private static final int[] immOrder3 = new int[]{11, 4, 9, 8, 10, 6, 7, 3, 2, 1, 5};
-    private static final int[] immOrder4 = new int[]{9, 4, 6, 8, 7, 5};
-    private static final int[] immOrder5 = new int[]{17, 16, 15, 14, 13, 12};
-    private static final int[] immOrder6 = new int[]{8, 4, 3, 7, 6, 2, 1, 5};
-    private static final int[] immOrder7 = new int[]{5, 4, 3, 2, 7, 6};
+    // Branch and jump targets are collected before printing for --labels, and for --resolve which
+    // forgets registers at them
+    private boolean collectTargets() {
+        return labels || resolvePairs;
+    }
 
-    private String parseRVC(long mask) {
-        String offset;
-        switch ((int) bitSubstr(mask, 1, 0)) {
-            case 0b00:
-                switch ((int) bitSubstr(mask, 15, 13)) {
-                    case 0b000:
-                        if (bitSubstr(mask, 12, 2) == 0) {
-                            return normalView(new String[]{"illegal_instruction"});
-                        }
-                        return normalView(new String[]{"c.addi4spn", TO_CREG(bitSubstr(mask, 4, 2)),
-                                "sp", Long.toString(unshuffle(bitSubstr(mask, 12, 5), immOrder1, false))});
-                    case 0b010:
-                        return loadStoreView(new String[]{"c.lw", TO_CREG(bitSubstr(mask, 4, 2)),
-                                Long.toString(unshuffle(bitSubstr(mask, 12, 10) * 4 + bitSubstr(mask, 6, 5), immOrder2, false)),
-                                TO_CREG(bitSubstr(mask, 9, 7))});
-                    case 0b110:
-                        return loadStoreView(new String[]{"c.sw", TO_CREG(bitSubstr(mask, 4, 2)),
-                                Long.toString(unshuffle(bitSubstr(mask, 12, 10) * 4 + bitSubstr(mask, 6, 5), immOrder2, false)),
-                                TO_CREG(bitSubstr(mask, 9, 7))});
-                    default:
-                        return unknown_command;
-                }
-            case 0b01:
-                switch ((int) bitSubstr(mask, 15, 13)) {
-                    case 0b000:
-                        if (bitSubstr(mask, 12, 2) == 0) {
-                            return normalView(new String[]{"c.nop"});
-                        } else if (bitSubstr(mask, 11, 7) != 0) {
-                            return normalView(new String[]{"c.addi", TO_REG(bitSubstr(mask, 11, 7)),
-                                    Long.toString(bitSubstr(mask, 12, 12) * 32 + bitSubstr(mask, 6, 2))});
-                        }
-                        return unknown_command;
-                    case 0b001:
-                        offset = Long.toHexString(pc + unshuffle(bitSubstr(mask, 12, 2), immOrder3, true));
-                        return normalViewAddr(new String[]{"c.jal", offset});
-                    case 0b010:
-                        return normalView(new String[]{"c.li", TO_REG(bitSubstr(mask, 11, 7)),
-                                Long.toString(bitSubstr(mask, 12, 12) * (-32) + bitSubstr(mask, 6, 2))});
-                    case 0b011:
-                        if (bitSubstr(mask, 11, 7) == 2) {
-                            return normalView(new String[]{"c.addi16sp", TO_REG(bitSubstr(mask, 11, 7)),
-                                    "sp", Long.toString(unshuffle(bitSubstr(mask, 12, 12) * 32 + bitSubstr(mask, 6, 2), immOrder4, true))});
-                        } else if (bitSubstr(mask, 11, 7) != 0) {
-                            return normalView(new String[]{"c.lui", TO_REG(bitSubstr(mask, 11, 7)),
-                                    Long.toString(unshuffle(bitSubstr(mask, 12, 12) * 32 + bitSubstr(mask, 6, 2), immOrder5, true))});
-                        }
-                        return unknown_command;
-                    case 0b100:
-                        switch ((int) bitSubstr(mask, 11, 10)) {
-                            case 0:
-                                return normalView(new String[]{"c.srli", TO_CREG(bitSubstr(mask, 9, 7)),
-                                        Long.toString(bitSubstr(mask, 12, 12) * 32 + bitSubstr(mask, 6, 2))});
-                            case 1:
-                                return normalView(new String[]{"c.srai", TO_CREG(bitSubstr(mask, 9, 7)),
-                                        Long.toString(bitSubstr(mask, 12, 12) * 32 + bitSubstr(mask, 6, 2))});
-                            case 2:
-                                return normalView(new String[]{"c.andi", TO_CREG(bitSubstr(mask, 9, 7)),
-                                        Long.toString(bitSubstr(mask, 12, 12) * (-32) + bitSubstr(mask, 6, 2))});
-                            default:
-                                switch ((int) bitSubstr(mask, 6, 5)) {
-                                    case 0:
-                                        return normalView(new String[]{"c.sub", TO_CREG(bitSubstr(mask, 9, 7)),
-                                                TO_CREG(bitSubstr(mask, 4, 2))});
-                                    case 1:
-                                        return normalView(new String[]{"c.xor", TO_CREG(bitSubstr(mask, 9, 7)),
-                                                TO_CREG(bitSubstr(mask, 4, 2))});
-                                    case 2:
-                                        return normalView(new String[]{"c.or", TO_CREG(bitSubstr(mask, 9, 7)),
-                                                TO_CREG(bitSubstr(mask, 4, 2))});
-                                    case 3:
-                                        return normalView(new String[]{"c.and", TO_CREG(bitSubstr(mask, 9, 7)),
-                                                TO_CREG(bitSubstr(mask, 4, 2))});
-                                }
-                        }
-                    case 0b101:
-                        offset = Long.toHexString(pc + unshuffle(bitSubstr(mask, 12, 2), immOrder3, true));
-                        return normalViewAddr(new String[]{"c.j", offset});
-                    case 0b110:
-                        offset = Long.toHexString(pc + unshuffle(bitSubstr(mask, 12, 10) * 32 + bitSubstr(mask, 6, 2), immOrder6, true));
-                        return normalViewAddr(new String[]{"c.beqz", TO_CREG(bitSubstr(mask, 9, 7)), offset});
-                    case 0b111:
-                        offset = Long.toHexString(pc + unshuffle(bitSubstr(mask, 12, 10) * 32 + bitSubstr(mask, 6, 2), immOrder6, true));
-                        return normalViewAddr(new String[]{"c.bnez", TO_CREG(bitSubstr(mask, 9, 7)), offset});
-                }
-            case 0b10:
-                switch ((int) bitSubstr(mask, 15, 13)) {
-                    case 0b000:
-                        return normalView(new String[]{"c.slli", TO_REG(bitSubstr(mask, 11, 7)),
-                                Long.toString(bitSubstr(mask, 12, 12) * 32 + bitSubstr(mask, 6, 2))});
-                    case 0b010:
-                        offset = Long.toString(unshuffle(bitSubstr(mask, 12, 12) * 32 + bitSubstr(mask, 6, 2), immOrder7, false));
-                        return loadStoreView(new String[]{"c.lwsp", TO_REG(bitSubstr(mask, 11, 7)), offset, "sp"});
-                    case 0b100:
-                        if (bitSubstr(mask, 12, 12) == 0) {
-                            if (bitSubstr(mask, 11, 7) == 0) {
-                                return unknown_command;
-                            }
-                            if (bitSubstr(mask, 6, 2) == 0) {
-                                return normalView(new String[]{"c.jr", TO_REG(bitSubstr(mask, 11, 7))});
-                            } else {
-                                return normalView(new String[]{"c.mv", TO_REG(bitSubstr(mask, 11, 7)),
-                                        TO_REG(bitSubstr(mask, 6, 2))});
-                            }
-                        } else {
-                            if (bitSubstr(mask, 11, 7) == 0) {
-                                if (bitSubstr(mask, 6, 2) == 0) {
-                                    return normalView(new String[]{"c.ebreak"});
-                                }
-                                return unknown_command;
-                            }
-                            if (bitSubstr(mask, 6, 2) == 0) {
-                                return normalView(new String[]{"c.jalr", TO_REG(bitSubstr(mask, 11, 7))});
-                            } else {
-                                return normalView(new String[]{"c.add", TO_REG(bitSubstr(mask, 11, 7)),
-                                        TO_REG(bitSubstr(mask, 6, 2))});
-                            }
-                        }
-                    case 0b110:
-                        offset = Long.toString(unshuffle(bitSubstr(mask, 12, 7), immOrder7, false));
-                        return loadStoreView(new String[]{"c.swsp", TO_REG(bitSubstr(mask, 6, 2)), offset, "sp"});
-                }
-            default:
-                return unknown_command;
+    private ConstantTracker newTracker() {
+        return resolvePairs ? new ConstantTracker(symbols, layout.xlen) : null;
+    }
+
+    private static long readHalf(Source src) throws ParseException {
+        if (!src.hasNext(2)) {
+            src.error("Unexpected end of file");
+        }
+        return src.getNext2();
+    }
+
+    private static final class DecodedChunk {
+        final StringBuilder text = new StringBuilder();
+        final InstructionBuffer insns;
+        final XrefIndex.Builder xrefs;
+        final ConstantTracker tracker;
+
+        DecodedChunk(boolean record, XrefIndex.Builder xrefs, ConstantTracker tracker) {
+            insns = record ? new InstructionBuffer() : null;
+            this.xrefs = xrefs;
+            this.tracker = tracker;
+        }
+    }
+
+    private static <T> List<T> invokeAll(ForkJoinPool pool, List<Callable<T>> tasks) throws ParseException {
+        List<T> results = new ArrayList<>();
+        for (Future<T> future : pool.invokeAll(tasks)) {
+            results.add(get(future));
+        }
+        return results;
+    }
+
+    private static <T> T get(Future<T> future) throws ParseException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ParseException) {
+                throw (ParseException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void collectFunctionNames(long symtabPos, long symtabSize) throws ParseException {
+        long prevPos = getPos();
+        for (long i = 0; i < symtabSize; i += layout.symbolSize) {
+            long symbol = symtabPos + i;
+            long st_name = layout.st_name(source, symbol);
+            long st_value = layout.st_value(source, symbol);
+            long st_size = layout.st_size(source, symbol);
+            long st_info = layout.st_info(source, symbol);
+            if ((st_info & 0xf) == 2) { // STT_FUNC
+                functions.add(st_value, st_size, strtab.get(st_name));
+            }
+            if ((st_info & 0xf) == 1 || (st_info & 0xf) == 2) { // STT_OBJECT, STT_FUNC
+                symbols.add(st_value, st_size, strtab.get(st_name));
+            }
         }
+        functions.seal();
+        symbols.seal();
+        moveTo(prevPos);
+    }
+
+    private void parseSymbolTable(long symtabPos, long symtabSize, Appendable out) throws ParseException, IOException {
+        long prevPos = getPos();
+        out.append(SYMTAB_HEADER);
+        LineFormatter line = new LineFormatter();
+        for (long i = 0; i < symtabSize; i += layout.symbolSize) {
+            long symbol = symtabPos + i;
+            long st_name = layout.st_name(source, symbol);
+            long st_value = layout.st_value(source, symbol);
+            long st_size = layout.st_size(source, symbol);
+            long st_info = layout.st_info(source, symbol);
+            long st_other = layout.st_other(source, symbol);
+            long st_shndx = layout.st_shndx(source, symbol);
+
+            long st_bind = st_info >> 4;
+            long st_type = st_info & 0xf;
+            String index = TO_SHN(st_shndx);
+            String name = strtab.get(st_name);
+
+            // Same as "[%4d] 0x%-15s %5d %-8s %-8s %-8s %6s %s\n"
+            line.clear().append('[').decimal(i / layout.symbolSize, 4).append("] 0x");
+            int valueStart = line.length();
+            line.hex(st_value, 1).justifyLeft(valueStart, 15).append(' ')
+                    .decimal(st_size, 5).append(' ')
+                    .padRight(TO_STT(st_type), 8).append(' ')
+                    .padRight(TO_STB(st_bind), 8).append(' ')
+                    .padRight(TO_STV(st_other & 3), 8).append(' ')
+                    .padLeft(index, 6).append(' ')
+                    .append(name).append('\n').writeTo(out);
+        }
+        moveTo(prevPos);
+    }
+
+    private void expectMagic() throws ParseException {
+        // Magic 7f 45 4c 46
+        expect(0x7f);
+        expect(0x45);
+        expect(0x4c);
+        expect(0x46);
     }
 }
@@ -0,0 +1,307 @@
+// Decoded instruction. Instances are meant to be reused, the decoder overwrites all fields
+public final class Instruction {
+    // Operand layouts, they define which fields are meaningful and how the instruction is printed
+    public static final int FORM_NONE = 0;       // op
+    public static final int FORM_RD_RS1_RS2 = 1; // op rd, rs1, rs2
+    public static final int FORM_RD_RS1_IMM = 2; // op rd, rs1, imm
+    public static final int FORM_LOAD = 3;       // op rd, imm(rs1)
+    public static final int FORM_STORE = 4;      // op rs2, imm(rs1)
+    public static final int FORM_BRANCH = 5;     // op rs1, rs2, pc + imm
+    public static final int FORM_JUMP = 6;       // op rd, pc + imm
+    public static final int FORM_RD_IMM = 7;     // op rd, imm
+    public static final int FORM_CSR = 8;        // op rd, csr, rs1
+    public static final int FORM_CSR_IMM = 9;    // op rd, csr, imm
+    public static final int FORM_TARGET = 10;    // op pc + imm
+    public static final int FORM_RS1_TARGET = 11;// op rs1, pc + imm
+    public static final int FORM_RD_RS2 = 12;    // op rd, rs2
+    public static final int FORM_RS1 = 13;       // op rs1
+
+    // Opcode ids
+    public static final int UNKNOWN = 0;
+    public static final int ILLEGAL = 1;
+    // RV32I
+    public static final int ADD = 2;
+    public static final int SLL = 3;
+    public static final int SLT = 4;
+    public static final int SLTU = 5;
+    public static final int XOR = 6;
+    public static final int SRL = 7;
+    public static final int OR = 8;
+    public static final int AND = 9;
+    public static final int SUB = 10;
+    public static final int SRA = 11;
+    public static final int ADDI = 12;
+    public static final int SLTI = 13;
+    public static final int SLTIU = 14;
+    public static final int XORI = 15;
+    public static final int ORI = 16;
+    public static final int ANDI = 17;
+    public static final int SLLI = 18;
+    public static final int SRAI = 19;
+    public static final int SRLI = 20;
+    public static final int SB = 21;
+    public static final int SH = 22;
+    public static final int SW = 23;
+    public static final int LB = 24;
+    public static final int LH = 25;
+    public static final int LW = 26;
+    public static final int LBU = 27;
+    public static final int LHU = 28;
+    public static final int BEQ = 29;
+    public static final int BNE = 30;
+    public static final int BLT = 31;
+    public static final int BGE = 32;
+    public static final int BLTU = 33;
+    public static final int BGEU = 34;
+    public static final int JALR = 35;
+    public static final int JAL = 36;
+    public static final int AUIPC = 37;
+    public static final int LUI = 38;
+    public static final int ECALL = 39;
+    public static final int EBREAK = 40;
+    public static final int CSRRW = 41;
+    public static final int CSRRS = 42;
+    public static final int CSRRC = 43;
+    public static final int CSRRWI = 44;
+    public static final int CSRRSI = 45;
+    public static final int CSRRCI = 46;
+    // RV32M
+    public static final int MUL = 47;
+    public static final int MULH = 48;
+    public static final int MULHSU = 49;
+    public static final int MULHU = 50;
+    public static final int DIV = 51;
+    public static final int DIVU = 52;
+    public static final int REM = 53;
+    public static final int REMU = 54;
+    // RVC
+    public static final int C_ADDI4SPN = 55;
+    public static final int C_LW = 56;
+    public static final int C_SW = 57;
+    public static final int C_NOP = 58;
+    public static final int C_ADDI = 59;
+    public static final int C_JAL = 60;
+    public static final int C_LI = 61;
+    public static final int C_ADDI16SP = 62;
+    public static final int C_LUI = 63;
+    public static final int C_SRLI = 64;
+    public static final int C_SRAI = 65;
+    public static final int C_ANDI = 66;
+    public static final int C_SUB = 67;
+    public static final int C_XOR = 68;
+    public static final int C_OR = 69;
+    public static final int C_AND = 70;
+    public static final int C_J = 71;
+    public static final int C_BEQZ = 72;
+    public static final int C_BNEZ = 73;
+    public static final int C_SLLI = 74;
+    public static final int C_LWSP = 75;
+    public static final int C_JR = 76;
+    public static final int C_MV = 77;
+    public static final int C_EBREAK = 78;
+    public static final int C_JALR = 79;
+    public static final int C_ADD = 80;
+    public static final int C_SWSP = 81;
+    // RV64I
+    public static final int LWU = 82;
+    public static final int LD = 83;
+    public static final int SD = 84;
+    public static final int ADDIW = 85;
+    public static final int SLLIW = 86;
+    public static final int SRLIW = 87;
+    public static final int SRAIW = 88;
+    public static final int ADDW = 89;
+    public static final int SUBW = 90;
+    public static final int SLLW = 91;
+    public static final int SRLW = 92;
+    public static final int SRAW = 93;
+    // RV64M
+    public static final int MULW = 94;
+    public static final int DIVW = 95;
+    public static final int DIVUW = 96;
+    public static final int REMW = 97;
+    public static final int REMUW = 98;
+    // RV64C
+    public static final int C_LD = 99;
+    public static final int C_SD = 100;
+    public static final int C_ADDIW = 101;
+    public static final int C_SUBW = 102;
+    public static final int C_ADDW = 103;
+    public static final int C_LDSP = 104;
+    public static final int C_SDSP = 105;
+
+    public static final int OPCODE_COUNT = 106;
+
+    private static final String[] NAMES = new String[OPCODE_COUNT];
+    private static final int[] FORMS = new int[OPCODE_COUNT];
+
+    private static void define(int opcode, String name, int form) {
+        NAMES[opcode] = name;
+        FORMS[opcode] = form;
+    }
+
+    static {
+        define(UNKNOWN, "unknown_command", FORM_NONE);
+        define(ILLEGAL, "illegal_instruction", FORM_NONE);
+        define(ADD, "add", FORM_RD_RS1_RS2);
+        define(SLL, "sll", FORM_RD_RS1_RS2);
+        define(SLT, "slt", FORM_RD_RS1_RS2);
+        define(SLTU, "sltu", FORM_RD_RS1_RS2);
+        define(XOR, "xor", FORM_RD_RS1_RS2);
+        define(SRL, "srl", FORM_RD_RS1_RS2);
+        define(OR, "or", FORM_RD_RS1_RS2);
+        define(AND, "and", FORM_RD_RS1_RS2);
+        define(SUB, "sub", FORM_RD_RS1_RS2);
+        define(SRA, "sra", FORM_RD_RS1_RS2);
+        define(ADDI, "addi", FORM_RD_RS1_IMM);
+        define(SLTI, "slti", FORM_RD_RS1_IMM);
+        define(SLTIU, "sltiu", FORM_RD_RS1_IMM);
+        define(XORI, "xori", FORM_RD_RS1_IMM);
+        define(ORI, "ori", FORM_RD_RS1_IMM);
+        define(ANDI, "andi", FORM_RD_RS1_IMM);
+        define(SLLI, "slli", FORM_RD_RS1_IMM);
+        define(SRAI, "srai", FORM_RD_RS1_IMM);
+        define(SRLI, "srli", FORM_RD_RS1_IMM);
+        define(SB, "sb", FORM_STORE);
+        define(SH, "sh", FORM_STORE);
+        define(SW, "sw", FORM_STORE);
+        define(LB, "lb", FORM_LOAD);
+        define(LH, "lh", FORM_LOAD);
+        define(LW, "lw", FORM_LOAD);
+        define(LBU, "lbu", FORM_LOAD);
+        define(LHU, "lhu", FORM_LOAD);
+        define(BEQ, "beq", FORM_BRANCH);
+        define(BNE, "bne", FORM_BRANCH);
+        define(BLT, "blt", FORM_BRANCH);
+        define(BGE, "bge", FORM_BRANCH);
+        define(BLTU, "bltu", FORM_BRANCH);
+        define(BGEU, "bgeu", FORM_BRANCH);
+        define(JALR, "jalr", FORM_LOAD);
+        define(JAL, "jal", FORM_JUMP);
+        define(AUIPC, "auipc", FORM_RD_IMM);
+        define(LUI, "lui", FORM_RD_IMM);
+        define(ECALL, "ecall", FORM_NONE);
+        define(EBREAK, "ebreak", FORM_NONE);
+        define(CSRRW, "csrrw", FORM_CSR);
+        define(CSRRS, "csrrs", FORM_CSR);
+        define(CSRRC, "csrrc", FORM_CSR);
+        define(CSRRWI, "csrrwi", FORM_CSR_IMM);
+        define(CSRRSI, "csrrsi", FORM_CSR_IMM);
+        define(CSRRCI, "csrrci", FORM_CSR_IMM);
+        define(MUL, "mul", FORM_RD_RS1_RS2);
+        define(MULH, "mulh", FORM_RD_RS1_RS2);
+        define(MULHSU, "mulhsu", FORM_RD_RS1_RS2);
+        define(MULHU, "mulhu", FORM_RD_RS1_RS2);
+        define(DIV, "div", FORM_RD_RS1_RS2);
+        define(DIVU, "divu", FORM_RD_RS1_RS2);
+        define(REM, "rem", FORM_RD_RS1_RS2);
+        define(REMU, "remu", FORM_RD_RS1_RS2);
+        define(C_ADDI4SPN, "c.addi4spn", FORM_RD_RS1_IMM);
+        define(C_LW, "c.lw", FORM_LOAD);
+        define(C_SW, "c.sw", FORM_STORE);
+        define(C_NOP, "c.nop", FORM_NONE);
+        define(C_ADDI, "c.addi", FORM_RD_IMM);
+        define(C_JAL, "c.jal", FORM_TARGET);
+        define(C_LI, "c.li", FORM_RD_IMM);
+        define(C_ADDI16SP, "c.addi16sp", FORM_RD_RS1_IMM);
+        define(C_LUI, "c.lui", FORM_RD_IMM);
+        define(C_SRLI, "c.srli", FORM_RD_IMM);
+        define(C_SRAI, "c.srai", FORM_RD_IMM);
+        define(C_ANDI, "c.andi", FORM_RD_IMM);
+        define(C_SUB, "c.sub", FORM_RD_RS2);
+        define(C_XOR, "c.xor", FORM_RD_RS2);
+        define(C_OR, "c.or", FORM_RD_RS2);
+        define(C_AND, "c.and", FORM_RD_RS2);
+        define(C_J, "c.j", FORM_TARGET);
+        define(C_BEQZ, "c.beqz", FORM_RS1_TARGET);
+        define(C_BNEZ, "c.bnez", FORM_RS1_TARGET);
+        define(C_SLLI, "c.slli", FORM_RD_IMM);
+        define(C_LWSP, "c.lwsp", FORM_LOAD);
+        define(C_JR, "c.jr", FORM_RS1);
+        define(C_MV, "c.mv", FORM_RD_RS2);
+        define(C_EBREAK, "c.ebreak", FORM_NONE);
+        define(C_JALR, "c.jalr", FORM_RS1);
+        define(C_ADD, "c.add", FORM_RD_RS2);
+        define(C_SWSP, "c.swsp", FORM_STORE);
+        define(LWU, "lwu", FORM_LOAD);
+        define(LD, "ld", FORM_LOAD);
+        define(SD, "sd", FORM_STORE);
+        define(ADDIW, "addiw", FORM_RD_RS1_IMM);
+        define(SLLIW, "slliw", FORM_RD_RS1_IMM);
+        define(SRLIW, "srliw", FORM_RD_RS1_IMM);
+        define(SRAIW, "sraiw", FORM_RD_RS1_IMM);
+        define(ADDW, "addw", FORM_RD_RS1_RS2);
+        define(SUBW, "subw", FORM_RD_RS1_RS2);
+        define(SLLW, "sllw", FORM_RD_RS1_RS2);
+        define(SRLW, "srlw", FORM_RD_RS1_RS2);
+        define(SRAW, "sraw", FORM_RD_RS1_RS2);
+        define(MULW, "mulw", FORM_RD_RS1_RS2);
+        define(DIVW, "divw", FORM_RD_RS1_RS2);
+        define(DIVUW, "divuw", FORM_RD_RS1_RS2);
+        define(REMW, "remw", FORM_RD_RS1_RS2);
+        define(REMUW, "remuw", FORM_RD_RS1_RS2);
+        define(C_LD, "c.ld", FORM_LOAD);
+        define(C_SD, "c.sd", FORM_STORE);
+        define(C_ADDIW, "c.addiw", FORM_RD_IMM);
+        define(C_SUBW, "c.subw", FORM_RD_RS2);
+        define(C_ADDW, "c.addw", FORM_RD_RS2);
+        define(C_LDSP, "c.ldsp", FORM_LOAD);
+        define(C_SDSP, "c.sdsp", FORM_STORE);
+    }
+
+    public static String name(int opcode) {
+        return NAMES[opcode];
+    }
+
+    public static int form(int opcode) {
+        return FORMS[opcode];
+    }
+
+    public int opcode;
+    public int rd;
+    public int rs1;
+    public int rs2;
+    public int csr;
+    public long imm;
+    // Instruction size in bytes, 2 or 4
+    public int length;
+
+    public int form() {
+        return FORMS[opcode];
+    }
+
+    // Whether imm is an offset from the instruction address
+    public boolean hasTarget() {
+        int form = FORMS[opcode];
+        return form == FORM_BRANCH || form == FORM_JUMP || form == FORM_TARGET || form == FORM_RS1_TARGET;
+    }
+
+    // Packs everything but csr into a long: imm in the low 32 bits, then opcode, rd, rs1, rs2 and length
+    public long pack() {
+        return (imm & 0xffffffffL)
+                | (long) opcode << 32
+                | (long) rd << 40
+                | (long) rs1 << 45
+                | (long) rs2 << 50
+                | (long) length << 55;
+    }
+
+    public void unpack(long packed) {
+        imm = (int) packed;
+        opcode = (int) (packed >>> 32) & 0xff;
+        rd = (int) (packed >>> 40) & 0x1f;
+        rs1 = (int) (packed >>> 45) & 0x1f;
+        rs2 = (int) (packed >>> 50) & 0x1f;
+        length = (int) (packed >>> 55) & 0x7;
+        csr = 0;
+    }
+
+    void set(int opcode, int rd, int rs1, int rs2, long imm) {
+        this.opcode = opcode;
+        this.rd = rd;
+        this.rs1 = rs1;
+        this.rs2 = rs2;
+        this.imm = imm;
+        this.csr = 0;
+    }
+}
@@ -0,0 +1,113 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+// Growable column store of decoded instructions: Instruction.pack() values and CSR numbers.
+// Instructions are contiguous, so addresses follow from the start address and the lengths
+public final class InstructionBuffer {
+    private long[] packed;
+    private short[] csrs;
+    private int count;
+
+    public InstructionBuffer() {
+        this(1024);
+    }
+
+    public InstructionBuffer(int capacity) {
+        packed = new long[Math.max(capacity, 16)];
+        csrs = new short[Math.max(capacity, 16)];
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public void clear() {
+        count = 0;
+    }
+
+    public void add(Instruction insn) {
+        if (count == packed.length) {
+            packed = Arrays.copyOf(packed, count * 2);
+            csrs = Arrays.copyOf(csrs, count * 2);
+        }
+        packed[count] = insn.pack();
+        csrs[count] = (short) insn.csr;
+        count++;
+    }
+
+    public void addAll(InstructionBuffer other) {
+        addRange(other, 0, other.count);
+    }
+
+    // Instructions [from, to) of other
+    public void addRange(InstructionBuffer other, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (count == packed.length) {
+                packed = Arrays.copyOf(packed, count * 2);
+                csrs = Arrays.copyOf(csrs, count * 2);
+            }
+            packed[count] = other.packed[i];
+            csrs[count] = other.csrs[i];
+            count++;
+        }
+    }
+
+    public void get(int index, Instruction out) {
+        out.unpack(packed[index]);
+        out.csr = csrs[index];
+    }
+
+    public long packed(int index) {
+        return packed[index];
+    }
+
+    // Same as get(index, insn).length, in bytes
+    public int length(int index) {
+        return (int) (packed[index] >>> 55) & 0x7;
+    }
+
+    public int csr(int index) {
+        return csrs[index];
+    }
+
+    // Writes one block: count, then the columns
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            out.writeLong(packed[i]);
+        }
+        for (int i = 0; i < count; i++) {
+            out.writeShort(csrs[i]);
+        }
+    }
+
+    // Writes the marker which ends a sequence of blocks
+    public static void writeEnd(DataOutput out) throws IOException {
+        out.writeInt(-1);
+    }
+
+    // Replaces the content with the block written by writeTo. Returns false at the end marker
+    public boolean readFrom(DataInput in) throws IOException {
+        int size = in.readInt();
+        if (size == -1) {
+            return false;
+        }
+        if (size < 0) {
+            throw new IOException("Broken instruction block of size " + size);
+        }
+        if (size > packed.length) {
+            packed = new long[size];
+            csrs = new short[size];
+        }
+        for (int i = 0; i < size; i++) {
+            packed[i] = in.readLong();
+        }
+        for (int i = 0; i < size; i++) {
+            csrs[i] = in.readShort();
+        }
+        count = size;
+        return true;
+    }
+}
@@ -0,0 +1,610 @@
+// Decodes RV32I, RV32M and RVC encodings into an Instruction without allocating.
+// With xlen 64 it decodes RV64I, RV64M and RV64C instead
+public final class InstructionDecoder {
+    private InstructionDecoder() {
+    }
+
+    public static void decode(long mask, Instruction out) {
+        decode(mask, out, 32);
+    }
+
+    public static void decode(long mask, Instruction out, int xlen) {
+        if ((mask & 3) == 3) {
+            decode32(mask, out, xlen);
+        } else {
+            decode16(mask, out, xlen);
+        }
+    }
+
+    public static void decode32(long mask, Instruction out) {
+        decode32(mask, out, 32);
+    }
+
+    public static void decode32(long mask, Instruction out, int xlen) {
+        out.length = 4;
+        if (xlen == 64 && decodeRV64(mask, out)) {
+            return;
+        }
+        long opcode = bitSubstr(mask, 6, 0);
+        long funct7 = bitSubstr(mask, 31, 25);
+        if (opcode == 0b0110011 && funct7 == 1) {
+            decodeRV32M(mask, out);
+        } else {
+            decodeRV32I(mask, out);
+        }
+    }
+
+    static long bitSubstr(long value, int r, int l) {
+        long andMask = (1L << (r + 1)) - 1 - ((1L << l) - 1);
+        return (andMask & value) >> l;
+    }
+
+    private static void decodeRV32I(long mask, Instruction out) {
+        int rd = (int) bitSubstr(mask, 11, 7);
+        int rs1 = (int) bitSubstr(mask, 19, 15);
+        int rs2 = (int) bitSubstr(mask, 24, 20);
+        long funct7 = bitSubstr(mask, 31, 25);
+        long funct3 = bitSubstr(mask, 14, 12);
+        long opcode = bitSubstr(mask, 6, 0);
+        int imm110 = (int) bitSubstr(mask, 31, 20);
+        int op = Instruction.UNKNOWN;
+        long imm = 0;
+        switch ((int) opcode) {
+            case 0b0110011:
+                if (funct7 == 0) {
+                    switch ((int) funct3) {
+                        case 0b000:
+                            op = Instruction.ADD;
+                            break;
+                        case 0b001:
+                            op = Instruction.SLL;
+                            break;
+                        case 0b010:
+                            op = Instruction.SLT;
+                            break;
+                        case 0b011:
+                            op = Instruction.SLTU;
+                            break;
+                        case 0b100:
+                            op = Instruction.XOR;
+                            break;
+                        case 0b101:
+                            op = Instruction.SRL;
+                            break;
+                        case 0b110:
+                            op = Instruction.OR;
+                            break;
+                        case 0b111:
+                            op = Instruction.AND;
+                            break;
+                    }
+                } else if (funct7 == (1L << 5)) {
+                    if (funct3 == 0b000) {
+                        op = Instruction.SUB;
+                    } else if (funct3 == 0b101) {
+                        op = Instruction.SRA;
+                    }
+                }
+                break;
+            case 0b0010011:
+                imm = getImmediateI(mask);
+                switch ((int) funct3) {
+                    case 0b000:
+                        op = Instruction.ADDI;
+                        break;
+                    case 0b010:
+                        op = Instruction.SLTI;
+                        break;
+                    case 0b011:
+                        op = Instruction.SLTIU;
+                        break;
+                    case 0b100:
+                        op = Instruction.XORI;
+                        break;
+                    case 0b110:
+                        op = Instruction.ORI;
+                        break;
+                    case 0b111:
+                        op = Instruction.ANDI;
+                        break;
+                    case 0b001:
+                        if (funct7 == 0) {
+                            op = Instruction.SLLI;
+                            imm = rs2;
+                        }
+                        break;
+                    case 0b101:
+                        if (funct7 == (1L << 5)) {
+                            op = Instruction.SRAI;
+                            imm = rs2;
+                        } else if (funct7 == 0) {
+                            op = Instruction.SRLI;
+                            imm = rs2;
+                        }
+                        break;
+                }
+                break;
+            case 0b0100011:
+                imm = getImmediateS(mask);
+                switch ((int) funct3) {
+                    case 0b000:
+                        op = Instruction.SB;
+                        break;
+                    case 0b001:
+                        op = Instruction.SH;
+                        break;
+                    case 0b010:
+                        op = Instruction.SW;
+                        break;
+                }
+                break;
+            case 0b0000011:
+                imm = getImmediateI(mask);
+                switch ((int) funct3) {
+                    case 0b000:
+                        op = Instruction.LB;
+                        break;
+                    case 0b001:
+                        op = Instruction.LH;
+                        break;
+                    case 0b010:
+                        op = Instruction.LW;
+                        break;
+                    case 0b100:
+                        op = Instruction.LBU;
+                        break;
+                    case 0b101:
+                        op = Instruction.LHU;
+                        break;
+                }
+                break;
+            case 0b1100011:
+                imm = getImmediateB(mask);
+                switch ((int) funct3) {
+                    case 0b000:
+                        op = Instruction.BEQ;
+                        break;
+                    case 0b001:
+                        op = Instruction.BNE;
+                        break;
+                    case 0b100:
+                        op = Instruction.BLT;
+                        break;
+                    case 0b101:
+                        op = Instruction.BGE;
+                        break;
+                    case 0b110:
+                        op = Instruction.BLTU;
+                        break;
+                    case 0b111:
+                        op = Instruction.BGEU;
+                        break;
+                }
+                break;
+            case 0b1100111:
+                if (funct3 == 0b000) {
+                    op = Instruction.JALR;
+                    imm = getImmediateI(mask);
+                }
+                break;
+            case 0b1101111:
+                op = Instruction.JAL;
+                imm = getImmediateJ(mask);
+                break;
+            case 0b0010111:
+                op = Instruction.AUIPC;
+                imm = getImmediateU(mask);
+                break;
+            case 0b0110111:
+                op = Instruction.LUI;
+                imm = getImmediateU(mask);
+                break;
+            case 0b1110011:
+                switch ((int) funct3) {
+                    case 0b000:
+                        // Only ecall and ebreak have rs1 = rd = 0, anything else is printed as csrrw
+                        if (rs1 == 0 && rd == 0) {
+                            if (imm110 == 0) {
+                                op = Instruction.ECALL;
+                            } else if (imm110 == 1) {
+                                op = Instruction.EBREAK;
+                            }
+                        } else {
+                            op = Instruction.CSRRW;
+                        }
+                        break;
+                    case 0b001:
+                        op = Instruction.CSRRW;
+                        break;
+                    case 0b010:
+                        op = Instruction.CSRRS;
+                        break;
+                    case 0b011:
+                        op = Instruction.CSRRC;
+                        break;
+                    case 0b101:
+                        op = Instruction.CSRRWI;
+                        imm = rs1;
+                        break;
+                    case 0b110:
+                        op = Instruction.CSRRSI;
+                        imm = rs1;
+                        break;
+                    case 0b111:
+                        op = Instruction.CSRRCI;
+                        imm = rs1;
+                        break;
+                }
+                break;
+        }
+        out.set(op, rd, rs1, rs2, imm);
+        out.csr = imm110;
+    }
+
+    private static long getImmediateI(long mask) {
+        long res = 0;
+        if (bitSubstr(mask, 31, 31) > 0) {
+            res = 0b011_111_111_111_111_111_111_000_000_000_000L;
+        }
+        res |= bitSubstr(mask, 31, 20);
+        if (bitSubstr(res, 31, 31) > 0) {
+            res -= (1L << 32);
+        }
+        return res;
+    }
+
+    private static long getImmediateS(long mask) {
+        long res = 0;
+        if (bitSubstr(mask, 31, 31) > 0) {
+            res = 0b011_111_111_111_111_111_111_000_000_000_000L;
+        }
+        res |= (bitSubstr(mask, 31, 25) << 5);
+        res |= bitSubstr(mask, 11, 7);
+        if (bitSubstr(res, 31, 31) > 0) {
+            res -= (1L << 32);
+        }
+        return res;
+    }
+
+    private static long getImmediateB(long mask) {
+        long res = 0;
+        if (bitSubstr(mask, 31, 31) > 0) {
+            res = 0b011_111_111_111_111_111_111_000_000_000_000L;
+        }
+        res |= (bitSubstr(mask, 7, 7) << 11);
+        res |= (bitSubstr(mask, 30, 25) << 5);
+        res |= (bitSubstr(mask, 11, 8) << 1);
+        if (bitSubstr(res, 31, 31) > 0) {
+            res -= (1L << 32);
+        }
+        return res;
+    }
+
+    private static long getImmediateU(long mask) {
+        long res = bitSubstr(mask, 31, 12) << 12;
+        if (bitSubstr(res, 31, 31) > 0) {
+            res -= (1L << 32);
+        }
+        return res;
+    }
+
+    private static long getImmediateJ(long mask) {
+        long res = 0;
+        if (bitSubstr(mask, 31, 31) > 0) {
+            res = 0b011_111_111_111_100_000_000_000_000_000_000L;
+        }
+        res |= (bitSubstr(mask, 19, 12) << 12);
+        res |= (bitSubstr(mask, 20, 20) << 11);
+        res |= (bitSubstr(mask, 30, 25) << 5);
+        res |= (bitSubstr(mask, 24, 21) << 1);
+        if (bitSubstr(res, 31, 31) > 0) {
+            res -= (1L << 32);
+        }
+        return res;
+    }
+
+    // Encodings which are new or different in RV64, returns false for the ones shared with RV32
+    private static boolean decodeRV64(long mask, Instruction out) {
+        int rd = (int) bitSubstr(mask, 11, 7);
+        int rs1 = (int) bitSubstr(mask, 19, 15);
+        int rs2 = (int) bitSubstr(mask, 24, 20);
+        long funct7 = bitSubstr(mask, 31, 25);
+        long funct6 = bitSubstr(mask, 31, 26);
+        long funct3 = bitSubstr(mask, 14, 12);
+        int op = Instruction.UNKNOWN;
+        long imm = 0;
+        switch ((int) bitSubstr(mask, 6, 0)) {
+            case 0b0000011:
+                if (funct3 == 0b011) {
+                    op = Instruction.LD;
+                } else if (funct3 == 0b110) {
+                    op = Instruction.LWU;
+                } else {
+                    return false;
+                }
+                imm = getImmediateI(mask);
+                break;
+            case 0b0100011:
+                if (funct3 != 0b011) {
+                    return false;
+                }
+                op = Instruction.SD;
+                imm = getImmediateS(mask);
+                break;
+            case 0b0010011:
+                // Shift amounts take 6 bits
+                if (funct3 == 0b001 && funct6 == 0) {
+                    op = Instruction.SLLI;
+                } else if (funct3 == 0b101 && funct6 == 0) {
+                    op = Instruction.SRLI;
+                } else if (funct3 == 0b101 && funct6 == 0b010000) {
+                    op = Instruction.SRAI;
+                } else if (funct3 == 0b001 || funct3 == 0b101) {
+                    break;
+                } else {
+                    return false;
+                }
+                imm = bitSubstr(mask, 25, 20);
+                break;
+            case 0b0011011:
+                if (funct3 == 0b000) {
+                    op = Instruction.ADDIW;
+                    imm = getImmediateI(mask);
+                } else if (funct3 == 0b001 && funct7 == 0) {
+                    op = Instruction.SLLIW;
+                    imm = rs2;
+                } else if (funct3 == 0b101 && funct7 == 0) {
+                    op = Instruction.SRLIW;
+                    imm = rs2;
+                } else if (funct3 == 0b101 && funct7 == (1L << 5)) {
+                    op = Instruction.SRAIW;
+                    imm = rs2;
+                }
+                break;
+            case 0b0111011:
+                if (funct7 == 0) {
+                    if (funct3 == 0b000) {
+                        op = Instruction.ADDW;
+                    } else if (funct3 == 0b001) {
+                        op = Instruction.SLLW;
+                    } else if (funct3 == 0b101) {
+                        op = Instruction.SRLW;
+                    }
+                } else if (funct7 == (1L << 5)) {
+                    if (funct3 == 0b000) {
+                        op = Instruction.SUBW;
+                    } else if (funct3 == 0b101) {
+                        op = Instruction.SRAW;
+                    }
+                } else if (funct7 == 1) {
+                    if (funct3 == 0b000) {
+                        op = Instruction.MULW;
+                    } else if (funct3 >= 0b100) {
+                        // divw, divuw, remw and remuw go in the order of funct3
+                        op = Instruction.DIVW + (int) funct3 - 0b100;
+                    }
+                }
+                break;
+            default:
+                return false;
+        }
+        out.set(op, rd, rs1, rs2, imm);
+        return true;
+    }
+
+    private static void decodeRV32M(long mask, Instruction out) {
+        int rd = (int) bitSubstr(mask, 11, 7);
+        int rs1 = (int) bitSubstr(mask, 19, 15);
+        int rs2 = (int) bitSubstr(mask, 24, 20);
+        // funct3 has exactly 8 values, one per RV32M instruction
+        out.set(Instruction.MUL + (int) bitSubstr(mask, 14, 12), rd, rs1, rs2, 0);
+    }
+
+    static long unshuffle(long mask, int[] order, boolean signed) {
+        long result = 0;
+        for (int i = 0; i < order.length; i++) {
+            long hit = Math.min(1, mask & (1L << i));
+            if (i == order.length - 1 && signed) {
+                result -= (hit << order[order.length - i - 1]);
+            } else {
+                result += (hit << order[order.length - i - 1]);
+            }
+        }
+        return result;
+    }
+
+    // Immediate bits' orders for RVC
+    private static final int[] immOrder1 = new int[]{5, 4, 9, 8, 7, 6, 2, 3};
+    private static final int[] immOrder2 = new int[]{5, 4, 3, 2, 6};
+    private static final int[] immOrder3 = new int[]{11, 4, 9, 8, 10, 6, 7, 3, 2, 1, 5};
+    private static final int[] immOrder4 = new int[]{9, 4, 6, 8, 7, 5};
+    private static final int[] immOrder5 = new int[]{17, 16, 15, 14, 13, 12};
+    private static final int[] immOrder6 = new int[]{8, 4, 3, 7, 6, 2, 1, 5};
+    private static final int[] immOrder7 = new int[]{5, 4, 3, 2, 7, 6};
+
+    // Register numbers of the 3-bit RVC register fields
+    private static int creg(long num) {
+        return (int) num + 8;
+    }
+
+    public static void decode16(long mask, Instruction out) {
+        decode16(mask, out, 32);
+    }
+
+    public static void decode16(long mask, Instruction out, int xlen) {
+        out.length = 2;
+        if (xlen == 64 && decodeRV64C(mask, out)) {
+            return;
+        }
+        int rd = (int) bitSubstr(mask, 11, 7);
+        int rs2 = (int) bitSubstr(mask, 6, 2);
+        int crd = creg(bitSubstr(mask, 4, 2));
+        int crs1 = creg(bitSubstr(mask, 9, 7));
+        long imm6 = bitSubstr(mask, 12, 12) * 32 + bitSubstr(mask, 6, 2);
+        long immNeg6 = bitSubstr(mask, 12, 12) * (-32) + bitSubstr(mask, 6, 2);
+        switch ((int) bitSubstr(mask, 1, 0)) {
+            case 0b00:
+                switch ((int) bitSubstr(mask, 15, 13)) {
+                    case 0b000:
+                        if (bitSubstr(mask, 12, 2) == 0) {
+                            out.set(Instruction.ILLEGAL, 0, 0, 0, 0);
+                        } else {
+                            out.set(Instruction.C_ADDI4SPN, crd, 2, 0,
+                                    unshuffle(bitSubstr(mask, 12, 5), immOrder1, false));
+                        }
+                        return;
+                    case 0b010:
+                        out.set(Instruction.C_LW, crd, crs1, 0,
+                                unshuffle(bitSubstr(mask, 12, 10) * 4 + bitSubstr(mask, 6, 5), immOrder2, false));
+                        return;
+                    case 0b110:
+                        out.set(Instruction.C_SW, 0, crs1, crd,
+                                unshuffle(bitSubstr(mask, 12, 10) * 4 + bitSubstr(mask, 6, 5), immOrder2, false));
+                        return;
+                }
+                break;
+            case 0b01:
+                switch ((int) bitSubstr(mask, 15, 13)) {
+                    case 0b000:
+                        if (bitSubstr(mask, 12, 2) == 0) {
+                            out.set(Instruction.C_NOP, 0, 0, 0, 0);
+                            return;
+                        } else if (rd != 0) {
+                            out.set(Instruction.C_ADDI, rd, 0, 0, imm6);
+                            return;
+                        }
+                        break;
+                    case 0b001:
+                        out.set(Instruction.C_JAL, 0, 0, 0, unshuffle(bitSubstr(mask, 12, 2), immOrder3, true));
+                        return;
+                    case 0b010:
+                        out.set(Instruction.C_LI, rd, 0, 0, immNeg6);
+                        return;
+                    case 0b011:
+                        if (rd == 2) {
+                            out.set(Instruction.C_ADDI16SP, rd, 2, 0, unshuffle(imm6, immOrder4, true));
+                            return;
+                        } else if (rd != 0) {
+                            out.set(Instruction.C_LUI, rd, 0, 0, unshuffle(imm6, immOrder5, true));
+                            return;
+                        }
+                        break;
+                    case 0b100:
+                        switch ((int) bitSubstr(mask, 11, 10)) {
+                            case 0:
+                                out.set(Instruction.C_SRLI, crs1, 0, 0, imm6);
+                                return;
+                            case 1:
+                                out.set(Instruction.C_SRAI, crs1, 0, 0, imm6);
+                                return;
+                            case 2:
+                                out.set(Instruction.C_ANDI, crs1, 0, 0, immNeg6);
+                                return;
+                            default:
+                                // c.sub, c.xor, c.or and c.and go in the order of bits 6..5
+                                out.set(Instruction.C_SUB + (int) bitSubstr(mask, 6, 5), crs1, 0, crd, 0);
+                                return;
+                        }
+                    case 0b101:
+                        out.set(Instruction.C_J, 0, 0, 0, unshuffle(bitSubstr(mask, 12, 2), immOrder3, true));
+                        return;
+                    case 0b110:
+                        out.set(Instruction.C_BEQZ, 0, crs1, 0,
+                                unshuffle(bitSubstr(mask, 12, 10) * 32 + bitSubstr(mask, 6, 2), immOrder6, true));
+                        return;
+                    case 0b111:
+                        out.set(Instruction.C_BNEZ, 0, crs1, 0,
+                                unshuffle(bitSubstr(mask, 12, 10) * 32 + bitSubstr(mask, 6, 2), immOrder6, true));
+                        return;
+                }
+                break;
+            case 0b10:
+                switch ((int) bitSubstr(mask, 15, 13)) {
+                    case 0b000:
+                        out.set(Instruction.C_SLLI, rd, 0, 0, imm6);
+                        return;
+                    case 0b010:
+                        out.set(Instruction.C_LWSP, rd, 2, 0, unshuffle(imm6, immOrder7, false));
+                        return;
+                    case 0b100:
+                        if (bitSubstr(mask, 12, 12) == 0) {
+                            if (rd == 0) {
+                                break;
+                            }
+                            if (rs2 == 0) {
+                                out.set(Instruction.C_JR, 0, rd, 0, 0);
+                            } else {
+                                out.set(Instruction.C_MV, rd, 0, rs2, 0);
+                            }
+                        } else {
+                            if (rd == 0) {
+                                if (rs2 == 0) {
+                                    out.set(Instruction.C_EBREAK, 0, 0, 0, 0);
+                                    return;
+                                }
+                                break;
+                            }
+                            if (rs2 == 0) {
+                                out.set(Instruction.C_JALR, 0, rd, 0, 0);
+                            } else {
+                                out.set(Instruction.C_ADD, rd, 0, rs2, 0);
+                            }
+                        }
+                        return;
+                    case 0b110:
+                        out.set(Instruction.C_SWSP, 0, 2, rs2, unshuffle(bitSubstr(mask, 12, 7), immOrder7, false));
+                        return;
+                }
+                break;
+        }
+        out.set(Instruction.UNKNOWN, 0, 0, 0, 0);
+    }
+
+    // RVC encodings which are new or different in RV64, returns false for the ones shared with RV32
+    private static boolean decodeRV64C(long mask, Instruction out) {
+        int rd = (int) bitSubstr(mask, 11, 7);
+        int crd = creg(bitSubstr(mask, 4, 2));
+        int crs1 = creg(bitSubstr(mask, 9, 7));
+        long funct3 = bitSubstr(mask, 15, 13);
+        switch ((int) bitSubstr(mask, 1, 0)) {
+            case 0b00:
+                if (funct3 == 0b011 || funct3 == 0b111) {
+                    long imm = (bitSubstr(mask, 12, 10) << 3) | (bitSubstr(mask, 6, 5) << 6);
+                    if (funct3 == 0b011) {
+                        out.set(Instruction.C_LD, crd, crs1, 0, imm);
+                    } else {
+                        out.set(Instruction.C_SD, 0, crs1, crd, imm);
+                    }
+                    return true;
+                }
+                return false;
+            case 0b01:
+                if (funct3 == 0b001) {
+                    // c.jal is RV32 only, its encoding is c.addiw in RV64
+                    long imm = bitSubstr(mask, 12, 12) * (-32) + bitSubstr(mask, 6, 2);
+                    out.set(rd != 0 ? Instruction.C_ADDIW : Instruction.UNKNOWN, rd, 0, 0, imm);
+                    return true;
+                }
+                if (funct3 == 0b100 && bitSubstr(mask, 12, 10) == 0b111) {
+                    long funct2 = bitSubstr(mask, 6, 5);
+                    out.set(funct2 < 2 ? Instruction.C_SUBW + (int) funct2 : Instruction.UNKNOWN, crs1, 0, crd, 0);
+                    return true;
+                }
+                return false;
+            case 0b10:
+                if (funct3 == 0b011) {
+                    long imm = (bitSubstr(mask, 12, 12) << 5) | (bitSubstr(mask, 6, 5) << 3)
+                            | (bitSubstr(mask, 4, 2) << 6);
+                    out.set(rd != 0 ? Instruction.C_LDSP : Instruction.UNKNOWN, rd, 2, 0, imm);
+                    return true;
+                }
+                if (funct3 == 0b111) {
+                    long imm = (bitSubstr(mask, 12, 10) << 3) | (bitSubstr(mask, 9, 7) << 6);
+                    out.set(Instruction.C_SDSP, 0, 2, (int) bitSubstr(mask, 6, 2), imm);
+                    return true;
+                }
+                return false;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,186 @@
+// Renders decoded instructions as assembly text
+public class InstructionFormatter {
+    private static final String[] REG_NAMES = new String[32];
+
+    static {
+        for (int i = 0; i < 32; i++) {
+            REG_NAMES[i] = TO_REG(i);
+        }
+    }
+
+    private static String TO_REG(long num) {
+        switch ((int) num) {
+            case 0:
+                return "zero";
+            case 1:
+                return "ra";
+            case 2:
+                return "sp";
+            case 3:
+                return "gp";
+            case 4:
+                return "tp";
+            case 5:
+                return "t0";
+            case 6:
+            case 7:
+                return "t" + (num - 5);
+            case 8:
+                return "s0";
+            case 9:
+                return "s1";
+            case 10:
+            case 11:
+            case 12:
+            case 13:
+            case 14:
+            case 15:
+            case 16:
+            case 17:
+                return "a" + (num - 10);
+            case 18:
+            case 19:
+            case 20:
+            case 21:
+            case 22:
+            case 23:
+            case 24:
+            case 25:
+            case 26:
+            case 27:
+                return "s" + (num - 16);
+            case 28:
+            case 29:
+            case 30:
+            case 31:
+                return "t" + (num - 25);
+            default:
+                return "unkown_reg";
+        }
+    }
+
+    private static String TO_CSR(long num) {
+        if (num == 0x001L) {
+            return "fflags";
+        } else if (num == 0x002L) {
+            return "frm";
+        } else if (num == 0x003L) {
+            return "fcsr";
+        } else if (num == 0xc00L) {
+            return "cycle";
+        } else if (num == 0xc01L) {
+            return "time";
+        } else if (num == 0xc02L) {
+            return "instret";
+        } else if (num == 0xc80L) {
+            return "cycleh";
+        } else if (num == 0xc81L) {
+            return "timeh";
+        } else if (num == 0xc82L) {
+            return "instreth";
+        }
+        return "unknown_csr_reg";
+    }
+
+    public static String regName(int reg) {
+        return REG_NAMES[reg];
+    }
+
+    private final SymbolIndex symbols;
+    private final boolean relativeTargets;
+    // Targets wrap around at 32 bits on RV32
+    private final long addrMask;
+
+    public InstructionFormatter(SymbolIndex symbols, boolean relativeTargets, int xlen) {
+        this.symbols = symbols;
+        this.relativeTargets = relativeTargets;
+        this.addrMask = xlen == 32 ? 0xffffffffL : -1L;
+    }
+
+    public void format(Instruction insn, long pc, StringBuilder out) {
+        out.append(Instruction.name(insn.opcode));
+        switch (insn.form()) {
+            case Instruction.FORM_NONE:
+                return;
+            case Instruction.FORM_RD_RS1_RS2:
+                out.append(' ').append(REG_NAMES[insn.rd]).append(", ").append(REG_NAMES[insn.rs1])
+                        .append(", ").append(REG_NAMES[insn.rs2]);
+                return;
+            case Instruction.FORM_RD_RS1_IMM:
+                out.append(' ').append(REG_NAMES[insn.rd]).append(", ").append(REG_NAMES[insn.rs1])
+                        .append(", ").append(insn.imm);
+                return;
+            case Instruction.FORM_LOAD:
+                out.append(' ').append(REG_NAMES[insn.rd]).append(", ").append(insn.imm)
+                        .append('(').append(REG_NAMES[insn.rs1]).append(')');
+                return;
+            case Instruction.FORM_STORE:
+                out.append(' ').append(REG_NAMES[insn.rs2]).append(", ").append(insn.imm)
+                        .append('(').append(REG_NAMES[insn.rs1]).append(')');
+                return;
+            case Instruction.FORM_BRANCH:
+                out.append(' ').append(REG_NAMES[insn.rs1]).append(", ").append(REG_NAMES[insn.rs2]).append(", ");
+                appendTarget(pc + insn.imm & addrMask, out);
+                return;
+            case Instruction.FORM_JUMP:
+                out.append(' ').append(REG_NAMES[insn.rd]).append(", ");
+                appendTarget(pc + insn.imm & addrMask, out);
+                return;
+            case Instruction.FORM_RD_IMM:
+                out.append(' ').append(REG_NAMES[insn.rd]).append(", ").append(insn.imm);
+                return;
+            case Instruction.FORM_CSR:
+                out.append(' ').append(REG_NAMES[insn.rd]).append(", ").append(TO_CSR(insn.csr))
+                        .append(", ").append(REG_NAMES[insn.rs1]);
+                return;
+            case Instruction.FORM_CSR_IMM:
+                out.append(' ').append(REG_NAMES[insn.rd]).append(", ").append(TO_CSR(insn.csr))
+                        .append(", ").append(insn.imm);
+                return;
+            case Instruction.FORM_TARGET:
+                out.append(' ');
+                appendTarget(pc + insn.imm & addrMask, out);
+                return;
+            case Instruction.FORM_RS1_TARGET:
+                out.append(' ').append(REG_NAMES[insn.rs1]).append(", ");
+                appendTarget(pc + insn.imm & addrMask, out);
+                return;
+            case Instruction.FORM_RD_RS2:
+                out.append(' ').append(REG_NAMES[insn.rd]).append(", ").append(REG_NAMES[insn.rs2]);
+                return;
+            case Instruction.FORM_RS1:
+                out.append(' ').append(REG_NAMES[insn.rs1]);
+                return;
+            default:
+                throw new IllegalStateException("Unknown instruction form " + insn.form());
+        }
+    }
+
+    // Whether a target at addr is printed as LOC_xxxxx, not by a symbol name
+    public boolean printsLocation(long addr) {
+        return (relativeTargets ? symbols.indexOfPreceding(addr) : symbols.indexOf(addr)) < 0;
+    }
+
+    // Symbol name of addr, plus an offset with relative targets, or LOC_xxxxx
+    void appendTarget(long addr, StringBuilder out) {
+        int symbol = relativeTargets ? symbols.indexOfPreceding(addr) : symbols.indexOf(addr);
+        if (symbol >= 0) {
+            out.append(symbols.name(symbol));
+            if (symbols.address(symbol) != addr) {
+                out.append("+0x");
+                appendHex(addr - symbols.address(symbol), 1, out);
+            }
+            return;
+        }
+        out.append("LOC_");
+        appendHex(addr, 5, out);
+    }
+
+    // Same as String.format("%0<width>x", value)
+    static void appendHex(long value, int width, StringBuilder out) {
+        int digits = Math.max(width, (64 - Long.numberOfLeadingZeros(value) + 3) / 4);
+        for (int i = digits - 1; i >= 0; i--) {
+            out.append(i < 16 ? Character.forDigit((int) (value >>> (4 * i)) & 0xf, 16) : '0');
+        }
+    }
+}
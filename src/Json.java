@@ -0,0 +1,25 @@
+// Helpers for the JSON output of the structured listing and the control-flow graphs
+final class Json {
+    private Json() {
+    }
+
+    // Escapes quotes, backslashes and control characters. DOT strings escape quotes and backslashes the same way
+    static void escape(CharSequence text, StringBuilder out) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20) {
+                out.append("\\u00");
+                InstructionFormatter.appendHex(c, 2, out);
+            } else {
+                out.append(c);
+            }
+        }
+    }
+
+    // Addresses are strings, 64-bit values do not fit into JSON numbers of most readers
+    static void address(long addr, StringBuilder out) {
+        out.append("\"0x").append(Long.toHexString(addr)).append('"');
+    }
+}
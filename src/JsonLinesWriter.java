@@ -0,0 +1,66 @@
+import java.io.IOException;
+
+// Streams the listing as JSON Lines, one object per region, instruction and symbol:
+// {"kind": "insn", "address": "0x10074", "raw": "0x00000513", "length": 4, "opcode": 12, "mnemonic": "addi", ...}
+public final class JsonLinesWriter implements ListingSink {
+    private final Appendable out;
+    private final StringBuilder line = new StringBuilder();
+
+    public JsonLinesWriter(Appendable out) {
+        this.out = out;
+    }
+
+    @Override
+    public void start(int xlen) throws IOException {
+        out.append("{\"kind\": \"file\", \"xlen\": ").append(Integer.toString(xlen)).append("}\n");
+    }
+
+    @Override
+    public void region(CodeRegion region) throws IOException {
+        line.setLength(0);
+        line.append("{\"kind\": \"region\", \"name\": \"");
+        Json.escape(region.name, line);
+        line.append("\", \"address\": ");
+        Json.address(region.address, line);
+        line.append(", \"size\": ").append(region.size).append("}\n");
+        out.append(line);
+    }
+
+    @Override
+    public void instruction(long addr, long raw, Instruction insn) throws IOException {
+        line.setLength(0);
+        line.append("{\"kind\": \"insn\", \"address\": ");
+        Json.address(addr, line);
+        line.append(", \"raw\": \"0x");
+        InstructionFormatter.appendHex(raw, insn.length * 2, line);
+        line.append("\", \"length\": ").append(insn.length)
+                .append(", \"opcode\": ").append(insn.opcode)
+                .append(", \"mnemonic\": \"").append(Instruction.name(insn.opcode))
+                .append("\", \"rd\": ").append(insn.rd)
+                .append(", \"rs1\": ").append(insn.rs1)
+                .append(", \"rs2\": ").append(insn.rs2)
+                .append(", \"imm\": ").append(insn.imm).append("}\n");
+        out.append(line);
+    }
+
+    @Override
+    public void symbol(long index, long value, long size, long info, long other, long shndx, String name)
+            throws IOException {
+        line.setLength(0);
+        line.append("{\"kind\": \"symbol\", \"index\": ").append(index).append(", \"value\": ");
+        Json.address(value, line);
+        line.append(", \"size\": ").append(size)
+                .append(", \"type\": \"").append(ElfParser.TO_STT(info & 0xf))
+                .append("\", \"bind\": \"").append(ElfParser.TO_STB(info >> 4))
+                .append("\", \"vis\": \"").append(ElfParser.TO_STV(other & 3))
+                .append("\", \"shndx\": \"").append(ElfParser.TO_SHN(shndx))
+                .append("\", \"name\": \"");
+        Json.escape(name, line);
+        line.append("\"}\n");
+        out.append(line);
+    }
+
+    @Override
+    public void finish() {
+    }
+}
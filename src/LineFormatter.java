@@ -0,0 +1,120 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+
+// Reusable line buffer with the few fixed-width conversions of String.format the listing needs
+public final class LineFormatter {
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private char[] buf = new char[128];
+    private int length;
+
+    public LineFormatter clear() {
+        length = 0;
+        return this;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    private void ensure(int extra) {
+        if (length + extra > buf.length) {
+            char[] bigger = new char[Math.max(buf.length * 2, length + extra)];
+            System.arraycopy(buf, 0, bigger, 0, length);
+            buf = bigger;
+        }
+    }
+
+    public LineFormatter append(char c) {
+        ensure(1);
+        buf[length++] = c;
+        return this;
+    }
+
+    public LineFormatter append(CharSequence s) {
+        int len = s.length();
+        ensure(len);
+        if (s instanceof String) {
+            ((String) s).getChars(0, len, buf, length);
+        } else if (s instanceof StringBuilder) {
+            ((StringBuilder) s).getChars(0, len, buf, length);
+        } else {
+            for (int i = 0; i < len; i++) {
+                buf[length + i] = s.charAt(i);
+            }
+        }
+        length += len;
+        return this;
+    }
+
+    public LineFormatter spaces(int count) {
+        ensure(count);
+        for (int i = 0; i < count; i++) {
+            buf[length++] = ' ';
+        }
+        return this;
+    }
+
+    // Same as "%<width>s"
+    public LineFormatter padLeft(CharSequence s, int width) {
+        return spaces(width - s.length()).append(s);
+    }
+
+    // Same as "%-<width>s"
+    public LineFormatter padRight(CharSequence s, int width) {
+        return append(s).spaces(width - s.length());
+    }
+
+    // Pads with spaces what was appended since start up to width chars, like the "-" flag of String.format
+    public LineFormatter justifyLeft(int start, int width) {
+        return spaces(start + width - length);
+    }
+
+    // Same as "%0<width>x", negative values are printed as 64-bit two's complement
+    public LineFormatter hex(long value, int width) {
+        int digits = Math.max(width, (64 - Long.numberOfLeadingZeros(value) + 3) / 4);
+        ensure(digits);
+        for (int i = digits - 1; i >= 0; i--) {
+            buf[length++] = i < 16 ? HEX_DIGITS[(int) (value >>> (4 * i)) & 0xf] : '0';
+        }
+        return this;
+    }
+
+    // Same as "%<width>d"
+    public LineFormatter decimal(long value, int width) {
+        // Digits are computed on the negative value, which also covers Long.MIN_VALUE
+        long negative = value < 0 ? value : -value;
+        int digits = 1;
+        for (long rest = negative / 10; rest != 0; rest /= 10) {
+            digits++;
+        }
+        int size = value < 0 ? digits + 1 : digits;
+        spaces(width - size);
+        ensure(size);
+        if (value < 0) {
+            buf[length++] = '-';
+        }
+        for (int i = length + digits - 1; i >= length; i--) {
+            buf[i] = (char) ('0' - negative % 10);
+            negative /= 10;
+        }
+        length += digits;
+        return this;
+    }
+
+    public void writeTo(Appendable out) throws IOException {
+        if (out instanceof Writer) {
+            ((Writer) out).write(buf, 0, length);
+        } else if (out instanceof StringBuilder) {
+            ((StringBuilder) out).append(buf, 0, length);
+        } else {
+            out.append(CharBuffer.wrap(buf, 0, length));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return new String(buf, 0, length);
+    }
+}
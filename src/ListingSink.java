@@ -0,0 +1,18 @@
+import java.io.IOException;
+
+// Receives the listing as data instead of text: code regions, every decoded instruction with its raw
+// bits, then the symbol table entries, in the order of the text listing
+public interface ListingSink {
+    // Called first, with the register width of the file
+    void start(int xlen) throws IOException;
+
+    void region(CodeRegion region) throws IOException;
+
+    // raw holds the 16 or 32 instruction bits as they are in the file
+    void instruction(long addr, long raw, Instruction insn) throws IOException;
+
+    void symbol(long index, long value, long size, long info, long other, long shndx, String name) throws IOException;
+
+    // Called once after everything, flushes what is buffered
+    void finish() throws IOException;
+}
@@ -0,0 +1,77 @@
+import java.util.Arrays;
+import java.util.function.LongPredicate;
+
+// Addresses of branch and jump targets, collected from decoded instructions before the listing
+// is printed, so the lines they point to can be labelled LOC_xxxxx and --resolve knows where blocks
+// start. Kept as a sorted array without
+// duplicates once sealed, like SymbolIndex
+public final class LocalLabels {
+    private long[] addrs = new long[64];
+    private int count;
+    private boolean sealed;
+    // Targets wrap around at 32 bits on RV32, like in InstructionFormatter
+    private final long addrMask;
+
+    public LocalLabels(int xlen) {
+        addrMask = xlen == 32 ? 0xffffffffL : -1L;
+    }
+
+    // Adds the targets of insns, the first of which is at addr
+    public void addTargets(InstructionBuffer insns, long addr) {
+        addTargets(insns, 0, insns.size(), addr);
+    }
+
+    public void addTargets(InstructionBuffer insns, int from, int to, long addr) {
+        if (sealed) {
+            throw new IllegalStateException("Labels are already sealed");
+        }
+        Instruction insn = new Instruction();
+        for (int k = from; k < to; k++) {
+            insns.get(k, insn);
+            switch (insn.form()) {
+                case Instruction.FORM_BRANCH:
+                case Instruction.FORM_JUMP:
+                case Instruction.FORM_TARGET:
+                case Instruction.FORM_RS1_TARGET:
+                    add(addr + insn.imm & addrMask);
+                    break;
+                default:
+                    break;
+            }
+            addr += insn.length;
+        }
+    }
+
+    public void add(long addr) {
+        if (count == addrs.length) {
+            addrs = Arrays.copyOf(addrs, count * 2);
+        }
+        addrs[count++] = addr;
+    }
+
+    // Sorts the labels, dropping the ones for which keep is false
+    public LocalLabels seal(LongPredicate keep) {
+        Arrays.sort(addrs, 0, count);
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if ((unique == 0 || addrs[unique - 1] != addrs[i]) && keep.test(addrs[i])) {
+                addrs[unique++] = addrs[i];
+            }
+        }
+        addrs = Arrays.copyOf(addrs, unique);
+        count = unique;
+        sealed = true;
+        return this;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public boolean contains(long addr) {
+        if (!sealed) {
+            throw new IllegalStateException("Labels are not sealed yet");
+        }
+        return Arrays.binarySearch(addrs, 0, count, addr) >= 0;
+    }
+}
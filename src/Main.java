@@ -1,30 +1,121 @@
 import java.io.*;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
 
 public class Main {
     public static void main(String[] args) {
-        if (args.length != 2) {
-            System.err.println("Please, enter two arguments - input and output file names");
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(Options.USAGE);
+            return;
+        }
+        if (options.serve) {
+            try {
+                new Server(options).start();
+            } catch (IOException e) {
+                System.err.println("Sorry, could not start the server: " + e.getMessage());
+                System.exit(1);
+            }
             return;
         }
-        File inputFile = new File(args[0]);
-        byte[] fileContent;
+        if (options.client) {
+            List<String> forwarded = new ArrayList<>();
+            for (String arg : args) {
+                if (arg.startsWith("--") && !arg.startsWith("--client")) {
+                    forwarded.add(arg);
+                }
+            }
+            if (!new Client(options, forwarded).run()) {
+                System.exit(1);
+            }
+            return;
+        }
+        if (options.batch) {
+            if (!new Batch(options).run()) {
+                System.exit(1);
+            }
+            return;
+        }
+        Source source;
         try {
-            fileContent = Files.readAllBytes(inputFile.toPath());
+            // "-" is standard input, read as it streams in
+            String input = options.files.get(0);
+            source = input.equals("-") ? new StreamSource(System.in) : new MappedSource(Paths.get(input));
         } catch (IOException e) {
             System.err.println("Sorry, an error occurred while reading input file " + e.getMessage());
             return;
         }
-        ByteSource source = new ByteSource(fileContent);
-        ByteParser parser = new ElfParser(source);
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(args[1], StandardCharsets.UTF_8))) {
-            writer.write(parser.parse());
+        try {
+            ElfParser parser = options.newParser(source);
+            Path output = Paths.get(options.files.get(1));
+            export(parser, output, options.format);
+            if (options.xrefs != null) {
+                Writer out = new OutputStreamWriter(System.out);
+                parser.writeXrefs(options.xrefs, out);
+                out.flush();
+            }
+            if (options.cfg != null) {
+                writeControlFlow(parser, Paths.get(options.cfg));
+            }
+            if (parser.stats() != null) {
+                parser.stats().report(System.err);
+            }
         } catch (ParseException e) {
-            System.err.println("The input file was probably incorrect :( \n" + e.getMessage());
+            if (source instanceof StreamSource && ((StreamSource) source).failure() != null) {
+                // The file looks cut because reading it failed
+                System.err.println("Sorry, an error occurred while reading input " + ((StreamSource) source).failure());
+            } else {
+                System.err.println("The input file was probably incorrect :( \n" + e.getMessage());
+            }
         } catch (IOException e) {
             System.err.println("Sorry, an error occurred while output");
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+
+    static void disassemble(ByteParser parser, Path output) throws ParseException, IOException {
+        try (Writer writer = new ChannelWriter(FileChannel.open(output,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))) {
+            parser.parse(writer);
+        }
+    }
+
+    static void export(ElfParser parser, Path output, String format) throws ParseException, IOException {
+        try (FileChannel channel = FileChannel.open(output,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            write(parser, format, channel);
+        }
+    }
+
+    // The listing in any --format, the channel is left open
+    static void write(ElfParser parser, String format, WritableByteChannel channel) throws ParseException, IOException {
+        if (format.equals("columnar")) {
+            parser.export(new ColumnarWriter(channel));
+            return;
+        }
+        ChannelWriter writer = new ChannelWriter(channel);
+        if (format.equals("jsonl")) {
+            parser.export(new JsonLinesWriter(writer));
+        } else {
+            parser.parse(writer);
+        }
+        writer.flush();
+    }
+
+    static void writeControlFlow(ElfParser parser, Path output) throws ParseException, IOException {
+        try (Writer writer = new ChannelWriter(FileChannel.open(output,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))) {
+            parser.writeControlFlow(writer, output.getFileName().toString().endsWith(".json"));
         }
     }
 }
@@ -0,0 +1,233 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Command line options
+public class Options {
+    static final String USAGE = String.join("\n",
+            "Usage: java Main [options] <input_file_name> <output_file_name>",
+            "       java Main --batch [options] <directory | glob | @manifest> <output_directory>",
+            "       java Main --serve[=<port>] [--jobs=<n>]",
+            "       java Main --client[=<port>] [options] <input_file_name> <output_file_name>",
+            "<input_file_name> can be - for standard input",
+            "Options: --parallel[=<threads>] - decode code on several threads",
+            "         --sections=<name>[,<name>...] - disassemble only these code sections or segments",
+            "         --symbol=<name> - disassemble only this function",
+            "         --start=<address>, --stop=<address> - disassemble only instructions in this address range",
+            "         --relative-targets - print jump targets inside functions as func+0x1c",
+            "         --format=text|jsonl|columnar - write the listing as text, JSON Lines or a binary columnar file",
+            "         --resolve - print addresses built by auipc, lui, li and addi after the addi, load, store or jalr using them",
+            "         --labels - print LOC_xxxxx labels at the lines jumps and branches go to",
+            "         --stats - print time, throughput and allocations of each phase and opcode counts to the console",
+            "         --lazy-tables - build decoding tables on demand even for big files, as is done for small ones",
+            "         --jobs=<n> - number of files disassembled at once in batch and server mode",
+            "         --virtual - run batch mode files on virtual threads (Java 21+)",
+            "         --cache=<directory> - keep decoded code there and reuse it for identical sections",
+            "         --cache-size=<megabytes> - evict least recently used cache entries above it, 1024 by default",
+            "         --previous=<elf_file> - with --cache, decode only functions changed since this build, diff goes to <output_file_name>.diff",
+            "         --xrefs=<name | address> - also print what calls, jumps or branches to this function or address",
+            "         --cfg=<file> - write basic blocks and control-flow graphs of functions there, as JSON for *.json, DOT otherwise",
+            "         --serve[=<port>] - keep disassembling files sent to http://127.0.0.1:<port>, 7878 by default;",
+            "                            any local client can have it read every file this user can read",
+            "         --client[=<port>] - let the server on this port disassemble the file");
+
+    int parallelism = 1;
+    boolean lazyTables;
+    boolean relativeTargets;
+    boolean labels;
+    String format = "text";
+    boolean resolvePairs;
+    boolean stats;
+    boolean batch;
+    int jobs = Runtime.getRuntime().availableProcessors();
+    boolean virtualThreads;
+    boolean serve;
+    boolean client;
+    int port = Server.DEFAULT_PORT;
+    String cacheDir;
+    long cacheSize = 1024;
+    String previous;
+    String cfg;
+    String xrefs;
+    List<String> sections;
+    String symbol;
+    Long start;
+    Long stop;
+    final List<String> files = new ArrayList<>();
+
+    static Options parse(String[] args) {
+        Options options = new Options();
+        for (String arg : args) {
+            if (arg.equals("--lazy-tables")) {
+                options.lazyTables = true;
+            } else if (arg.equals("--relative-targets")) {
+                options.relativeTargets = true;
+            } else if (arg.startsWith("--format=")) {
+                options.format = arg.substring("--format=".length());
+                if (!Arrays.asList("text", "jsonl", "columnar").contains(options.format)) {
+                    throw new IllegalArgumentException("Unknown output format " + arg);
+                }
+            } else if (arg.equals("--resolve")) {
+                options.resolvePairs = true;
+            } else if (arg.equals("--stats")) {
+                options.stats = true;
+            } else if (arg.equals("--labels")) {
+                options.labels = true;
+            } else if (arg.equals("--parallel")) {
+                options.parallelism = Runtime.getRuntime().availableProcessors();
+            } else if (arg.startsWith("--parallel=")) {
+                options.parallelism = positive(arg, "--parallel=");
+            } else if (arg.equals("--batch")) {
+                options.batch = true;
+            } else if (arg.startsWith("--jobs=")) {
+                options.jobs = positive(arg, "--jobs=");
+            } else if (arg.equals("--serve") || arg.startsWith("--serve=")) {
+                options.serve = true;
+                options.port = port(arg, "--serve");
+            } else if (arg.equals("--client") || arg.startsWith("--client=")) {
+                options.client = true;
+                options.port = port(arg, "--client");
+            } else if (arg.equals("--virtual")) {
+                options.virtualThreads = true;
+            } else if (arg.startsWith("--cache=")) {
+                options.cacheDir = arg.substring("--cache=".length());
+            } else if (arg.startsWith("--cache-size=")) {
+                options.cacheSize = positive(arg, "--cache-size=");
+            } else if (arg.startsWith("--sections=")) {
+                options.sections = Arrays.asList(arg.substring("--sections=".length()).split(","));
+            } else if (arg.startsWith("--symbol=")) {
+                options.symbol = arg.substring("--symbol=".length());
+            } else if (arg.startsWith("--start=")) {
+                options.start = address(arg, "--start=");
+            } else if (arg.startsWith("--stop=")) {
+                options.stop = address(arg, "--stop=");
+            } else if (arg.startsWith("--previous=")) {
+                options.previous = arg.substring("--previous=".length());
+            } else if (arg.startsWith("--xrefs=")) {
+                options.xrefs = arg.substring("--xrefs=".length());
+            } else if (arg.startsWith("--cfg=")) {
+                options.cfg = arg.substring("--cfg=".length());
+            } else if (arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unknown option " + arg);
+            } else {
+                options.files.add(arg);
+            }
+        }
+        if (options.serve) {
+            if (options.client || !options.files.isEmpty()) {
+                throw new IllegalArgumentException("--serve takes no files, send them with --client");
+            }
+            return options;
+        }
+        if (options.client && options.batch) {
+            throw new IllegalArgumentException("--client sends one file, it does not work with --batch");
+        }
+        if (options.files.size() != 2) {
+            throw new IllegalArgumentException("Please, enter two arguments - input and output file names");
+        }
+        if (options.symbol != null && (options.start != null || options.stop != null)) {
+            throw new IllegalArgumentException("--symbol and --start/--stop can not be used together");
+        }
+        if (options.start != null && options.stop != null && Long.compareUnsigned(options.start, options.stop) > 0) {
+            throw new IllegalArgumentException("--start should not be after --stop");
+        }
+        if (options.previous != null && !(Files.isRegularFile(Paths.get(options.previous))
+                && Files.isReadable(Paths.get(options.previous)))) {
+            throw new IllegalArgumentException("Can not read the previous build " + options.previous);
+        }
+        if (options.previous != null && options.cacheDir == null) {
+            throw new IllegalArgumentException("--previous reuses what --cache keeps for the previous build, it needs --cache");
+        }
+        if (options.batch && options.previous != null) {
+            throw new IllegalArgumentException("--previous compares two single files, it does not work with --batch");
+        }
+        if (options.xrefs != null && (options.batch || options.symbol != null || options.start != null
+                || options.stop != null)) {
+            throw new IllegalArgumentException("--xrefs indexes the whole listing of one file, it does not work with --batch, --symbol or --start/--stop");
+        }
+        if (!options.format.equals("text") && (options.batch || options.xrefs != null || options.previous != null)) {
+            throw new IllegalArgumentException("--format does not work with --batch, --xrefs or --previous");
+        }
+        if (!options.format.equals("text") && (options.labels || options.resolvePairs || options.relativeTargets)) {
+            throw new IllegalArgumentException("--labels, --resolve and --relative-targets only change the text listing, they do not work with --format");
+        }
+        if (options.stats && (options.batch || options.client)) {
+            throw new IllegalArgumentException("--stats reports a local run on one file, it does not work with --batch or --client");
+        }
+        if (options.batch && options.cfg != null) {
+            throw new IllegalArgumentException("--cfg writes one file, it does not work with --batch");
+        }
+        return options;
+    }
+
+    // Decimal or 0x-prefixed hexadecimal, unsigned up to 0xffffffffffffffff
+    private static long address(String arg, String prefix) {
+        String value = arg.substring(prefix.length());
+        try {
+            if (value.startsWith("0x") || value.startsWith("0X")) {
+                return Long.parseUnsignedLong(value.substring(2), 16);
+            }
+            return Long.parseUnsignedLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Expected an address: " + arg);
+        }
+    }
+
+    private static int port(String arg, String option) {
+        if (arg.equals(option)) {
+            return Server.DEFAULT_PORT;
+        }
+        int value = positive(arg, option + "=");
+        if (value > 65535) {
+            throw new IllegalArgumentException("Expected a port number: " + arg);
+        }
+        return value;
+    }
+
+    private static int positive(String arg, String prefix) {
+        int value;
+        try {
+            value = Integer.parseInt(arg.substring(prefix.length()));
+        } catch (NumberFormatException e) {
+            value = 0;
+        }
+        if (value < 1) {
+            throw new IllegalArgumentException("Expected a positive integer: " + arg);
+        }
+        return value;
+    }
+
+    ElfParser newParser(Source source) throws IOException {
+        ElfParser parser = configure(new ElfParser(source));
+        parser.setStats(stats ? new Stats() : null);
+        if (previous != null) {
+            parser.setPrevious(configure(new ElfParser(new MappedSource(Paths.get(previous)))),
+                    Paths.get(files.get(1) + ".diff"));
+        }
+        return parser;
+    }
+
+    private ElfParser configure(ElfParser parser) throws IOException {
+        parser.setParallelism(parallelism);
+        parser.setRelativeTargets(relativeTargets);
+        parser.setLabels(labels);
+        parser.setResolvePairs(resolvePairs);
+        parser.setXrefs(xrefs != null);
+        parser.setRegions(sections);
+        if (symbol != null) {
+            parser.setSymbol(symbol);
+        } else if (start != null || stop != null) {
+            parser.setRange(start != null ? start : 0, stop != null ? stop : -1L);
+        }
+        if (lazyTables) {
+            parser.setRvcTable(RvcTable.lazy());
+        }
+        if (cacheDir != null) {
+            parser.setCache(new DisassemblyCache(Paths.get(cacheDir), cacheSize * 1024 * 1024));
+        }
+        return parser;
+    }
+}
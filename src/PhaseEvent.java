@@ -0,0 +1,22 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// JFR event for each phase of a parse, the same phases as Stats. Recorded only while a flight recording
+// with it enabled runs (java -XX:StartFlightRecording or jcmd JFR.start), otherwise creating and
+// committing it is compiled away
+@Name("disassembler.Phase")
+@Label("Disassembly Phase")
+@Category("Disassembler")
+@Description("A phase of disassembling one ELF file, like decoding code or printing the symbol table")
+final class PhaseEvent extends Event {
+    @Label("Phase")
+    String phase;
+
+    @Label("Input")
+    @DataAmount
+    long bytes;
+}
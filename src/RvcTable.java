@@ -0,0 +1,94 @@
+// Decoded forms of all 16-bit encodings, so that RVC decoding is a single array load.
+// The table is split into pages, a lazy table decodes a page the first time one of its encodings is met.
+// RV32 and RV64 have separate tables, as some encodings mean different instructions
+public final class RvcTable {
+    private static final int PAGE_BITS = 8;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    // Below this much code, decoding the pages it uses is faster than building whole tables
+    private static final long EAGER_CODE_SIZE = 256 * 1024;
+    // Set while a native image is built and when it runs. All holders are initialized at build time
+    // then (see META-INF/native-image), so the eager tables are part of the image
+    private static final boolean NATIVE_IMAGE = System.getProperty("org.graalvm.nativeimage.imagecode") != null;
+
+    private static final class Page {
+        // Final field, so a page published through a race is always seen fully built
+        final long[] entries;
+
+        Page(int first, int xlen) {
+            entries = new long[PAGE_SIZE];
+            Instruction insn = new Instruction();
+            for (int i = 0; i < PAGE_SIZE; i++) {
+                InstructionDecoder.decode16(first + i, insn, xlen);
+                entries[i] = insn.pack();
+            }
+        }
+    }
+
+    private static final class EagerHolder {
+        static final RvcTable INSTANCE = new RvcTable(32, false);
+    }
+
+    private static final class Eager64Holder {
+        static final RvcTable INSTANCE = new RvcTable(64, false);
+    }
+
+    private static final class LazyHolder {
+        static final RvcTable INSTANCE = new RvcTable(32, true);
+        static final RvcTable INSTANCE_64 = new RvcTable(64, true);
+    }
+
+    // Shared fully built RV32 table
+    public static RvcTable eager() {
+        return EagerHolder.INSTANCE;
+    }
+
+    // Shared RV32 table which is filled on demand
+    public static RvcTable lazy() {
+        return LazyHolder.INSTANCE;
+    }
+
+    // The shared table for codeSize bytes of code of the given register width
+    public static RvcTable forCode(int xlen, long codeSize) {
+        boolean eager = NATIVE_IMAGE || codeSize >= EAGER_CODE_SIZE;
+        if (xlen == 64) {
+            return eager ? Eager64Holder.INSTANCE : LazyHolder.INSTANCE_64;
+        }
+        return eager ? EagerHolder.INSTANCE : LazyHolder.INSTANCE;
+    }
+
+    private final Page[] pages = new Page[1 << (16 - PAGE_BITS)];
+    private final int xlen;
+    private final boolean lazy;
+
+    private RvcTable(int xlen, boolean lazy) {
+        this.xlen = xlen;
+        this.lazy = lazy;
+        if (!lazy) {
+            for (int i = 0; i < pages.length; i++) {
+                pages[i] = new Page(i << PAGE_BITS, xlen);
+            }
+        }
+    }
+
+    // The shared table of the same kind for the given register width, 32 or 64
+    public RvcTable forXlen(int xlen) {
+        if (xlen == this.xlen) {
+            return this;
+        }
+        if (xlen == 64) {
+            return lazy ? LazyHolder.INSTANCE_64 : Eager64Holder.INSTANCE;
+        }
+        return lazy ? LazyHolder.INSTANCE : EagerHolder.INSTANCE;
+    }
+
+    public void decode(long mask, Instruction out) {
+        int index = (int) mask & 0xffff;
+        Page page = pages[index >>> PAGE_BITS];
+        if (page == null) {
+            // Racing threads build equal pages, whichever is stored last wins
+            page = new Page(index & ~(PAGE_SIZE - 1), xlen);
+            pages[index >>> PAGE_BITS] = page;
+        }
+        out.unpack(page.entries[index & (PAGE_SIZE - 1)]);
+    }
+}
@@ -0,0 +1,285 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Disassembles files for other processes, so they do not pay JVM startup and a cold JIT for every file.
+// Listens on 127.0.0.1 only:
+//
+//   POST /disassemble?path=<file>&arg=<option>&arg=<option>...
+//     disassembles the file, or the ELF streamed as the request body when there is no path, with the same options as the
+//     command line ("arg=--labels", "arg=--format=jsonl") and returns the listing
+//   GET /metrics
+//     request counts, latency percentiles and throughput as "name value" lines
+//
+// Requests run on one pool of --jobs threads, so concurrent requests queue there instead of
+// each starting its own threads. Decoding tables are shared by all of them and built before listening
+public class Server {
+    static final int DEFAULT_PORT = 7878;
+
+    private final Options options;
+    private final long started = System.nanoTime();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong inFlight = new AtomicLong();
+    private final AtomicLong inputBytes = new AtomicLong();
+    private final AtomicLong outputBytes = new AtomicLong();
+    private final AtomicLong busyNanos = new AtomicLong();
+    // Latencies of finished requests, bucket k counts the ones from 2^(k-1) to 2^k microseconds
+    private final AtomicLongArray latencies = new AtomicLongArray(64);
+
+    public Server(Options options) {
+        this.options = options;
+    }
+
+    public void start() throws IOException {
+        warmUp();
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), options.port), 64);
+        ExecutorService pool = Executors.newFixedThreadPool(options.jobs);
+        server.setExecutor(pool);
+        server.createContext("/disassemble", this::disassemble);
+        server.createContext("/metrics", this::metrics);
+        server.start();
+        System.err.printf("Listening on http://127.0.0.1:%d with %d workers%n",
+                server.getAddress().getPort(), options.jobs);
+    }
+
+    // Builds the shared decoding tables and gets the decoders compiled before the first request
+    private static void warmUp() {
+        Instruction insn = new Instruction();
+        RvcTable rv32 = RvcTable.eager();
+        RvcTable rv64 = rv32.forXlen(64);
+        long word = 0x9e3779b9L;
+        for (int i = 0; i < 200_000; i++) {
+            word = word * 6364136223846793005L + 1442695040888963407L;
+            long bits = word >>> 32;
+            InstructionDecoder.decode32(bits | 3, insn, 32);
+            InstructionDecoder.decode32(bits | 3, insn, 64);
+            rv32.decode(bits, insn);
+            rv64.decode(bits, insn);
+        }
+    }
+
+    private void disassemble(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        requests.incrementAndGet();
+        inFlight.incrementAndGet();
+        boolean ok = false;
+        Listing listing = null;
+        Source source = null;
+        try {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                reply(exchange, 405, "Use POST\n");
+                return;
+            }
+            String path = null;
+            List<String> args = new ArrayList<>();
+            String query = exchange.getRequestURI().getRawQuery();
+            for (String pair : query == null ? new String[0] : query.split("&")) {
+                int eq = pair.indexOf('=');
+                String name = decode(eq < 0 ? pair : pair.substring(0, eq));
+                String value = eq < 0 ? "" : decode(pair.substring(eq + 1));
+                if (name.equals("path")) {
+                    path = value;
+                } else if (name.equals("arg")) {
+                    args.add(value);
+                } else if (!name.isEmpty()) {
+                    throw new IllegalArgumentException("Unknown parameter " + name);
+                }
+            }
+            Options request = requestOptions(args);
+            if (path != null) {
+                source = new MappedSource(Paths.get(path));
+            } else {
+                // Decoded while the body arrives, keeping only what the listing needs
+                source = new StreamSource(exchange.getRequestBody());
+            }
+            listing = new Listing(exchange, contentType(request.format));
+            Main.write(request.newParser(source), request.format, Channels.newChannel(listing));
+            listing.close();
+            inputBytes.addAndGet(source.size());
+            outputBytes.addAndGet(listing.count);
+            ok = true;
+        } catch (IllegalArgumentException e) {
+            fail(exchange, listing, 400, e.getMessage() + "\n");
+        } catch (NoSuchFileException e) {
+            fail(exchange, listing, 404, "No such file " + e.getMessage() + "\n");
+        } catch (ParseException e) {
+            fail(exchange, listing, 422, "The input file was probably incorrect: " + e.getMessage() + "\n");
+        } catch (IOException | RuntimeException e) {
+            fail(exchange, listing, 500, "Internal error: " + e + "\n");
+        } finally {
+            if (source instanceof StreamSource) {
+                // Its temporary file, if the upload did not fit in memory
+                ((StreamSource) source).close();
+            }
+            inFlight.decrementAndGet();
+            if (!ok) {
+                failures.incrementAndGet();
+            }
+            long nanos = System.nanoTime() - start;
+            busyNanos.addAndGet(nanos);
+            latencies.incrementAndGet(64 - Long.numberOfLeadingZeros(nanos / 1000));
+        }
+    }
+
+    // Options of one request, which may not write anything besides the listing. Client checks them
+    // too, so it reports options a request can not have before sending it
+    static Options requestOptions(List<String> args) {
+        List<String> all = new ArrayList<>(args);
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Expected an option: " + arg);
+            }
+            // --cache would let clients write to any directory the server can, and --parallel would start
+            // threads of its own besides the --jobs workers
+            if (arg.startsWith("--cache=") || arg.equals("--parallel") || arg.startsWith("--parallel=")) {
+                throw new IllegalArgumentException("--cache and --parallel do not work in requests");
+            }
+            // Before Options.parse, which checks the previous build can be read
+            if (arg.startsWith("--previous=")) {
+                throw new IllegalArgumentException("--previous does not work in requests");
+            }
+        }
+        // Placeholders for the input and output files
+        all.add("request");
+        all.add("response");
+        Options options = Options.parse(all.toArray(new String[0]));
+        if (options.batch || options.previous != null || options.xrefs != null || options.cfg != null
+                || options.stats || options.serve || options.client) {
+            throw new IllegalArgumentException("--batch, --previous, --xrefs, --cfg, --stats, --serve and --client do not work in requests");
+        }
+        return options;
+    }
+
+    private void metrics(HttpExchange exchange) throws IOException {
+        double uptime = (System.nanoTime() - started) / 1e9;
+        long finished = 0;
+        for (int k = 0; k < latencies.length(); k++) {
+            finished += latencies.get(k);
+        }
+        StringBuilder out = new StringBuilder();
+        Locale locale = Locale.ROOT;
+        out.append(String.format(locale, "uptime_seconds %.1f%n", uptime));
+        out.append(String.format(locale, "workers %d%n", options.jobs));
+        out.append(String.format(locale, "requests %d%n", requests.get()));
+        out.append(String.format(locale, "failures %d%n", failures.get()));
+        out.append(String.format(locale, "in_flight %d%n", inFlight.get()));
+        out.append(String.format(locale, "input_bytes %d%n", inputBytes.get()));
+        out.append(String.format(locale, "output_bytes %d%n", outputBytes.get()));
+        out.append(String.format(locale, "latency_ms_avg %.3f%n",
+                finished == 0 ? 0.0 : busyNanos.get() / 1e6 / finished));
+        out.append(String.format(locale, "latency_ms_p50 %.3f%n", percentile(finished, 0.50)));
+        out.append(String.format(locale, "latency_ms_p99 %.3f%n", percentile(finished, 0.99)));
+        out.append(String.format(locale, "requests_per_second %.2f%n", finished / uptime));
+        // Decoding speed of a worker, not counting the time requests waited for one
+        out.append(String.format(locale, "megabytes_per_second %.2f%n",
+                busyNanos.get() == 0 ? 0.0 : inputBytes.get() / (1024.0 * 1024.0) / (busyNanos.get() / 1e9)));
+        reply(exchange, 200, out.toString());
+    }
+
+    // Upper bound of the latency bucket holding the given fraction of requests, in milliseconds
+    private double percentile(long finished, double fraction) {
+        if (finished == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(finished * fraction);
+        long seen = 0;
+        for (int k = 0; k < latencies.length(); k++) {
+            seen += latencies.get(k);
+            if (seen >= rank) {
+                return (1L << k) / 1000.0;
+            }
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    private static String contentType(String format) {
+        switch (format) {
+            case "jsonl":
+                return "application/x-ndjson";
+            case "columnar":
+                return "application/octet-stream";
+            default:
+                return "text/plain; charset=UTF-8";
+        }
+    }
+
+    private static String decode(String value) {
+        return URLDecoder.decode(value, StandardCharsets.UTF_8);
+    }
+
+    // Once part of the listing was sent with status 200, the connection is dropped instead, so the
+    // client sees a chunked body without its end and not a short listing
+    private static void fail(HttpExchange exchange, Listing listing, int status, String text) throws IOException {
+        if (listing != null && listing.body != null) {
+            throw new IOException("Listing cut off: " + text.trim());
+        }
+        reply(exchange, status, text);
+    }
+
+    private static void reply(HttpExchange exchange, int status, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream body = exchange.getResponseBody()) {
+            body.write(bytes);
+        }
+    }
+
+    // Response body written as the listing is printed, in chunks of unknown total length. Headers are only
+    // sent with the first byte, so errors found before it still get their own status
+    private static final class Listing extends OutputStream {
+        private final HttpExchange exchange;
+        private final String contentType;
+        private OutputStream body;
+        private long count;
+
+        Listing(HttpExchange exchange, String contentType) {
+            this.exchange = exchange;
+            this.contentType = contentType;
+        }
+
+        private OutputStream body() throws IOException {
+            if (body == null) {
+                exchange.getResponseHeaders().set("Content-Type", contentType);
+                exchange.sendResponseHeaders(200, 0);
+                body = exchange.getResponseBody();
+            }
+            return body;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            body().write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            body().write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            body().close();
+        }
+    }
+}
@@ -2,7 +2,22 @@ import java.text.ParseException;
 
 public interface Source {
     boolean hasNext();
+    boolean hasNext(long count);
     long getNext();
+    long getNext2();
+    long getNext4();
+    long getNext8();
+    void getBytes(byte[] dst, int offset, int length);
+    long size();
+
+    // How many of the count bytes from pos there are, fewer only at the end. Unlike size, a stream
+    // does not wait for its end to tell
+    default long available(long pos, long count) {
+        return Math.max(0, Math.min(count, size() - pos));
+    }
+
+    long getPos();
     void setPos(long newPos);
     void error(String message) throws ParseException;
+    Source duplicate();
 }
@@ -0,0 +1,145 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Locale;
+
+// Where a run spends its time, for --stats. Phases are begun and ended by the thread driving the parser,
+// and time and allocations go to the innermost running phase, so nested phases are not counted twice.
+// Pool threads working for a phase add their allocations with addAllocated, listed instructions are
+// counted per opcode by whoever decodes them. A parser without Stats does none of this
+public final class Stats {
+    public static final int HEADER = 0;
+    public static final int SECTIONS = 1;
+    public static final int SYMBOLS = 2;
+    public static final int DECODE = 3;
+    public static final int CODE = 4;
+    public static final int SYMTAB = 5;
+    public static final int CFG = 6;
+
+    private static final String[] PHASE_NAMES = {"header", "sections", "symbols", "decode", "code", "symtab", "cfg"};
+
+    // Null when the JVM can not tell allocated bytes
+    private static final com.sun.management.ThreadMXBean THREADS = threads();
+
+    private final long started = System.nanoTime();
+    private final long[] nanos = new long[PHASE_NAMES.length];
+    private final long[] allocated = new long[PHASE_NAMES.length];
+    private final long[] bytes = new long[PHASE_NAMES.length];
+    private final long[] opcodes = new long[Instruction.OPCODE_COUNT];
+    private final int[] running = new int[PHASE_NAMES.length];
+    private int depth;
+    private long switchNanos;
+    private long switchAllocated;
+
+    public static String phaseName(int phase) {
+        return PHASE_NAMES[phase];
+    }
+
+    public void begin(int phase) {
+        charge();
+        running[depth++] = phase;
+    }
+
+    // bytes is the input the phase went through
+    public void end(int phase, long bytes) {
+        charge();
+        if (depth == 0 || running[depth - 1] != phase) {
+            throw new IllegalStateException("Phase " + phaseName(phase) + " is not the innermost one");
+        }
+        depth--;
+        this.bytes[phase] += bytes;
+    }
+
+    // The innermost running phase, or -1
+    public int phase() {
+        return depth > 0 ? running[depth - 1] : -1;
+    }
+
+    public synchronized void addAllocated(int phase, long bytes) {
+        if (phase >= 0) {
+            allocated[phase] += bytes;
+        }
+    }
+
+    // Adds counts indexed by opcode
+    public synchronized void addOpcodes(long[] counts) {
+        for (int k = 0; k < counts.length; k++) {
+            opcodes[k] += counts[k];
+        }
+    }
+
+    // Bytes allocated by the current thread so far, 0 when unknown
+    public static long allocatedBytes() {
+        return THREADS != null ? THREADS.getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+    }
+
+    private void charge() {
+        long now = System.nanoTime();
+        long alloc = allocatedBytes();
+        if (depth > 0) {
+            int phase = running[depth - 1];
+            nanos[phase] += now - switchNanos;
+            synchronized (this) {
+                allocated[phase] += alloc - switchAllocated;
+            }
+        }
+        switchNanos = now;
+        switchAllocated = alloc;
+    }
+
+    public synchronized void report(Appendable out) throws IOException {
+        long total = System.nanoTime() - started;
+        long instructions = 0;
+        for (long count : opcodes) {
+            instructions += count;
+        }
+        Locale locale = Locale.ROOT;
+        out.append(String.format(locale, "%-10s %10s %6s %12s %10s %12s%n",
+                "Phase", "ms", "%", "bytes", "MB/s", "allocated"));
+        long phases = 0;
+        for (int p = 0; p < PHASE_NAMES.length; p++) {
+            phases += nanos[p];
+            if (nanos[p] == 0 && bytes[p] == 0) {
+                continue;
+            }
+            out.append(String.format(locale, "%-10s %10.2f %6.1f %12d %10.1f %12s%n", PHASE_NAMES[p],
+                    nanos[p] / 1e6, 100.0 * nanos[p] / total, bytes[p],
+                    bytes[p] / (1024.0 * 1024.0) / Math.max(nanos[p] / 1e9, 1e-9), allocation(allocated[p])));
+        }
+        out.append(String.format(locale, "%-10s %10.2f %6.1f%n", "other", (total - phases) / 1e6,
+                100.0 * (total - phases) / total));
+        out.append(String.format(locale, "%-10s %10.2f%n", "total", total / 1e6));
+        long listing = nanos[CODE] + nanos[DECODE];
+        out.append(String.format(locale, "Instructions: %d listed, %.2f M/s in decode and code, %d unknown, %d illegal%n",
+                instructions, instructions / 1e6 / Math.max(listing / 1e9, 1e-9),
+                opcodes[Instruction.UNKNOWN], opcodes[Instruction.ILLEGAL]));
+        // Most frequent first
+        Integer[] order = new Integer[opcodes.length];
+        for (int k = 0; k < order.length; k++) {
+            order[k] = k;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(opcodes[b], opcodes[a]));
+        for (int opcode : order) {
+            if (opcodes[opcode] == 0) {
+                break;
+            }
+            out.append(String.format(locale, "  %-12s %10d %6.2f%%%n", Instruction.name(opcode), opcodes[opcode],
+                    100.0 * opcodes[opcode] / instructions));
+        }
+    }
+
+    private static String allocation(long bytes) {
+        return THREADS == null ? "n/a" : String.format(Locale.ROOT, "%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+
+    private static com.sun.management.ThreadMXBean threads() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads =
+                    (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+                return threads;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,805 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+// Source reading a stream once, front to back, for inputs which can not be mapped like pipes.
+// A thread pumps the stream while the parser reads, reads wait until their bytes have arrived.
+//
+// The headers tell which parts of the file the listing needs: the headers, code sections,
+// symbol and string tables. Only those are kept, everything else is skipped as it streams by.
+// The program headers come right after the ELF header, so the first plan is made from them: code is
+// in the executable PT_LOAD segments, data segments are skipped, and the bytes outside all segments
+// are kept because the symbol and string tables are there. The section header table usually comes
+// last, when it arrives the plan is narrowed to the sections the listing reads and the memory of
+// everything else, such as debug info, is freed. Files with the section header table before their
+// code are planned from it at once.
+//
+// Kept bytes are held in memory up to a limit, the others in a temporary file at their offset in the
+// stream, and read back from there a window at a time
+public final class StreamSource implements Source {
+    // Kept in memory, the rest goes to a temporary file
+    public static final long DEFAULT_MEMORY_LIMIT = 16 * 1024 * 1024;
+
+    private static final int BLOCK_SIZE = 1024 * 1024;
+    // Read from the temporary file at once by a reader
+    private static final int WINDOW_SIZE = 64 * 1024;
+    private static final int HEADER_SIZE = 64;
+    private static final long SHT_PROGBITS = 1;
+    private static final long SHT_SYMTAB = 2;
+    private static final long SHT_STRTAB = 3;
+    private static final long SHF_EXECINSTR = 0x4;
+    private static final long PT_LOAD = 1;
+    private static final long PF_X = 0x1;
+
+    private final Store store;
+    private Block current;
+    private long pos;
+
+    // Starts reading in; the stream is read to its end but not closed
+    public StreamSource(InputStream in) {
+        this(in, DEFAULT_MEMORY_LIMIT);
+    }
+
+    public StreamSource(InputStream in, long memoryLimit) {
+        this.store = new Store(in, memoryLimit);
+        Thread pump = new Thread(store::pump, "stream-source");
+        pump.setDaemon(true);
+        pump.start();
+    }
+
+    private StreamSource(Store store, long pos) {
+        this.store = store;
+        this.pos = pos;
+    }
+
+    // The error which ended reading early, or null
+    public IOException failure() {
+        return store.failure;
+    }
+
+    // Deletes the temporary file, once this source and its duplicates are no longer read
+    public void close() throws IOException {
+        store.closeSpill();
+    }
+
+    // Part of the file kept in memory
+    private static final class Block {
+        final long start;
+        final byte[] data;
+        final ByteBuffer view;
+        // Written by the pump only, bytes below it are visible to readers
+        volatile int length;
+
+        Block(long start, int capacity) {
+            this.start = start;
+            this.data = new byte[capacity];
+            this.view = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        boolean covers(long pos, int count) {
+            return pos >= start && pos + count <= start + length;
+        }
+    }
+
+    // State shared by a source and its duplicates
+    private static final class Store {
+        final InputStream in;
+        final long memoryLimit;
+        // Bytes in blocks, written by the pump only
+        long inMemory;
+        // Sorted by start, replaced as a whole when blocks are added or dropped
+        volatile Block[] blocks = new Block[0];
+        // Bytes read from the stream so far
+        volatile long arrived;
+        volatile boolean ended;
+        volatile boolean planned;
+        volatile IOException failure;
+        // Where the plan can be made: the end of the program header table, or of the section header
+        // table when it comes first or there are no program headers
+        long planPoint = -1;
+        // End of the section header table when it comes after planPoint, the plan is narrowed there
+        long refinePoint = -1;
+        ElfLayout layout;
+        // Kept ranges [ranges[2k], ranges[2k + 1]) once planned, sorted and disjoint. Narrowed by
+        // the section headers while readers use it
+        volatile long[] ranges;
+        // Kept bytes from spillStart on which are not in memory, at their offset minus spillStart.
+        // Before the plan all of them are written there, after it only the kept ranges, so the file
+        // has holes
+        volatile FileChannel spillChannel;
+        volatile long spillStart = -1;
+
+        Store(InputStream in, long memoryLimit) {
+            this.in = in;
+            this.memoryLimit = memoryLimit;
+        }
+
+        void pump() {
+            byte[] buffer = new byte[64 * 1024];
+            try {
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    accept(buffer, read);
+                }
+                if (!planned) {
+                    // A file ending before its headers, the parser reports it
+                    plan(null);
+                }
+            } catch (IOException e) {
+                failure = e;
+            } catch (RuntimeException e) {
+                failure = new IOException(e);
+            } finally {
+                synchronized (this) {
+                    ended = true;
+                    notifyAll();
+                }
+            }
+        }
+
+        private void accept(byte[] buffer, int count) throws IOException {
+            int off = 0;
+            while (off < count) {
+                long at = arrived;
+                int size = count - off;
+                if (!planned) {
+                    // Stop at the point where the plan is made, or where the header is complete
+                    long stop = planPoint >= 0 ? planPoint : HEADER_SIZE;
+                    if (at < stop) {
+                        size = (int) Math.min(size, stop - at);
+                    }
+                    keepUnplanned(at, buffer, off, size);
+                } else {
+                    if (at < refinePoint) {
+                        size = (int) Math.min(size, refinePoint - at);
+                    }
+                    keepPlanned(at, buffer, off, size);
+                }
+                off += size;
+                publish(at + size);
+                if (!planned) {
+                    if (planPoint < 0 && at + size >= HEADER_SIZE) {
+                        readHeader();
+                    }
+                    if (planPoint >= 0 && at + size >= planPoint) {
+                        plan(layout);
+                    }
+                } else if (refinePoint >= 0 && at + size >= refinePoint) {
+                    refinePoint = -1;
+                    plan(layout);
+                }
+            }
+        }
+
+        private synchronized void publish(long arrived) {
+            this.arrived = arrived;
+            notifyAll();
+        }
+
+        private void keepUnplanned(long at, byte[] buffer, int off, int size) throws IOException {
+            // Once bytes were spilled the following ones are too, so the temporary file has no gaps
+            int kept = spillChannel != null ? 0 : (int) Math.max(0, Math.min(size, memoryLimit - inMemory));
+            if (kept > 0) {
+                append(at, buffer, off, kept, BLOCK_SIZE);
+            }
+            if (kept < size) {
+                spill(at + kept, buffer, off + kept, size - kept);
+            }
+        }
+
+        private void keepPlanned(long at, byte[] buffer, int off, int size) throws IOException {
+            for (int k = 0; k < ranges.length; k += 2) {
+                long from = Math.max(at, ranges[k]);
+                long to = Math.min(at + size, ranges[k + 1]);
+                if (from >= to) {
+                    continue;
+                }
+                int kept = (int) Math.max(0, Math.min(to - from, memoryLimit - inMemory));
+                if (kept > 0) {
+                    append(from, buffer, off + (int) (from - at), kept,
+                            (int) Math.min(BLOCK_SIZE, Math.min(ranges[k + 1] - from, memoryLimit - inMemory)));
+                }
+                if (from + kept < to) {
+                    spill(from + kept, buffer, off + (int) (from + kept - at), (int) (to - from - kept));
+                }
+            }
+        }
+
+        // Writes bytes at the file offset start to the temporary file, opened with the first ones
+        private void spill(long start, byte[] buffer, int off, int size) throws IOException {
+            FileChannel channel = spillChannel;
+            if (channel == null) {
+                Path spill = Files.createTempFile("stream-source", ".spill");
+                channel = FileChannel.open(spill, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                        StandardOpenOption.DELETE_ON_CLOSE);
+                spillStart = start;
+                spillChannel = channel;
+            }
+            ByteBuffer data = ByteBuffer.wrap(buffer, off, size);
+            long position = start - spillStart;
+            while (data.hasRemaining()) {
+                position += channel.write(data, position);
+            }
+        }
+
+        // Adds bytes at the file offset start, after all kept bytes
+        private void append(long start, byte[] buffer, int off, int size, int capacity) {
+            while (size > 0) {
+                Block[] current = blocks;
+                Block last = current.length > 0 ? current[current.length - 1] : null;
+                if (last == null || last.start + last.length != start || last.length == last.data.length) {
+                    last = new Block(start, Math.max(capacity, Math.min(size, BLOCK_SIZE)));
+                    Block[] grown = Arrays.copyOf(current, current.length + 1);
+                    grown[current.length] = last;
+                    blocks = grown;
+                }
+                int copied = Math.min(size, last.data.length - last.length);
+                System.arraycopy(buffer, off, last.data, last.length, copied);
+                last.length += copied;
+                inMemory += copied;
+                start += copied;
+                off += copied;
+                size -= copied;
+                capacity -= copied;
+            }
+        }
+
+        private void readHeader() throws IOException {
+            byte[] header = read(0, HEADER_SIZE);
+            layout = header != null ? ElfLayout.of(header[4]) : null;
+            if (layout == null) {
+                // Not an ELF file, the parser reports it
+                planPoint = HEADER_SIZE;
+                return;
+            }
+            Source src = new ByteSource(header);
+            try {
+                long shoff = layout.e_shoff(src);
+                long shnum = layout.e_shnum(src);
+                long phoff = layout.e_phoff(src);
+                long sections = shoff != 0 && shnum != 0 ? shoff + shnum * layout.e_shentsize(src) : -1;
+                long segments = phoff != 0 ? phoff + layout.e_phnum(src) * layout.e_phentsize(src) : -1;
+                if (segments >= 0 && (sections < 0 || segments < sections)) {
+                    planPoint = segments;
+                    refinePoint = sections;
+                } else if (sections >= 0) {
+                    planPoint = sections;
+                } else {
+                    planPoint = HEADER_SIZE;
+                }
+            } catch (ParseException e) {
+                planPoint = HEADER_SIZE;
+            }
+            // Already there when the table is before the header end
+            planPoint = Math.max(planPoint, HEADER_SIZE);
+            if (refinePoint >= 0 && refinePoint <= planPoint) {
+                refinePoint = -1;
+            }
+        }
+
+        // Decides what to keep from the headers, then drops what is not needed. Without a layout
+        // everything is kept. Called again when the section headers narrow a plan made from segments,
+        // ranges only get smaller, so bytes dropped before are never needed
+        private void plan(ElfLayout layout) throws IOException {
+            List<long[]> keep = new ArrayList<>();
+            if (layout == null) {
+                keep.add(new long[]{0, Long.MAX_VALUE});
+            } else {
+                try {
+                    if (refinePoint >= 0) {
+                        planFromSegments(layout, keep);
+                    } else {
+                        planFromHeaders(layout, keep);
+                    }
+                } catch (ParseException e) {
+                    // Broken headers, the parser reports them
+                    keep.clear();
+                    keep.add(new long[]{0, Long.MAX_VALUE});
+                }
+            }
+            long[] merged = merge(keep);
+            ranges = planned ? intersect(ranges, merged) : merged;
+            // Memory of ranges read already but not in the plan is freed, the temporary file keeps them
+            List<Block> kept = new ArrayList<>();
+            for (Block block : blocks) {
+                if (intersects(block.start, block.start + block.length)) {
+                    kept.add(block);
+                } else {
+                    inMemory -= block.length;
+                }
+            }
+            synchronized (this) {
+                blocks = kept.toArray(new Block[0]);
+                planned = true;
+                notifyAll();
+            }
+        }
+
+        private void planFromHeaders(ElfLayout layout, List<long[]> keep) throws IOException, ParseException {
+            byte[] header = read(0, HEADER_SIZE);
+            Source src = new ByteSource(header);
+            keep.add(new long[]{0, HEADER_SIZE});
+            long phoff = layout.e_phoff(src);
+            long phTable = layout.e_phnum(src) * layout.e_phentsize(src);
+            if (phoff != 0) {
+                keep.add(new long[]{phoff, phoff + phTable});
+            }
+            long shoff = layout.e_shoff(src);
+            long shentsize = layout.e_shentsize(src);
+            long shnum = layout.e_shnum(src);
+            boolean code = false;
+            if (shoff != 0 && shnum != 0) {
+                keep.add(new long[]{shoff, shoff + shnum * shentsize});
+                Source table = table(shoff, shnum * shentsize);
+                if (table == null) {
+                    throw new ParseException("Section header table did not arrive", 0);
+                }
+                long shstrHeader = layout.e_shstrndx(src) * shentsize;
+                Source names = null;
+                if (shstrHeader + shentsize <= shnum * shentsize) {
+                    long offset = layout.sh_offset(table, shstrHeader);
+                    long size = layout.sh_size(table, shstrHeader);
+                    keep.add(new long[]{offset, offset + size});
+                    names = table(offset, size);
+                }
+                for (long entry = 0; entry < shnum * shentsize; entry += shentsize) {
+                    long type = layout.sh_type(table, entry);
+                    long offset = layout.sh_offset(table, entry);
+                    long size = layout.sh_size(table, entry);
+                    if (type == SHT_SYMTAB || type == SHT_STRTAB) {
+                        keep.add(new long[]{offset, offset + size});
+                    } else if (type == SHT_PROGBITS && ((layout.sh_flags(table, entry) & SHF_EXECINSTR) != 0
+                            || isText(names, layout.sh_name(table, entry)))) {
+                        // 2 more bytes for the last instruction, which may cross the end of the section
+                        keep.add(new long[]{offset, offset + size + 2});
+                        code = true;
+                    }
+                }
+            }
+            if (!code && phoff != 0) {
+                // Stripped files are disassembled by executable segments
+                Source table = table(phoff, phTable);
+                if (table == null) {
+                    // Program headers after the section headers, nothing is known about segments
+                    keep.add(new long[]{0, Long.MAX_VALUE});
+                    return;
+                }
+                for (long entry = 0; entry < phTable; entry += layout.e_phentsize(src)) {
+                    if (layout.p_type(table, entry) == PT_LOAD && (layout.p_flags(table, entry) & PF_X) != 0) {
+                        long offset = layout.p_offset(table, entry);
+                        keep.add(new long[]{offset, offset + layout.p_filesz(table, entry) + 2});
+                    }
+                }
+            }
+        }
+
+        // Executable segments, the section header table and whatever is outside all segments, where
+        // the symbol and string tables are. Everything when there is no executable segment
+        private void planFromSegments(ElfLayout layout, List<long[]> keep) throws IOException, ParseException {
+            byte[] header = read(0, HEADER_SIZE);
+            Source src = new ByteSource(header);
+            long phoff = layout.e_phoff(src);
+            long phentsize = layout.e_phentsize(src);
+            long phTable = layout.e_phnum(src) * phentsize;
+            Source table = table(phoff, phTable);
+            if (table == null) {
+                throw new ParseException("Program header table did not arrive", 0);
+            }
+            keep.add(new long[]{0, HEADER_SIZE});
+            keep.add(new long[]{phoff, phoff + phTable});
+            long shoff = layout.e_shoff(src);
+            keep.add(new long[]{shoff, shoff + layout.e_shnum(src) * layout.e_shentsize(src)});
+            List<long[]> segments = new ArrayList<>();
+            boolean code = false;
+            for (long entry = 0; entry < phTable; entry += phentsize) {
+                if (layout.p_type(table, entry) != PT_LOAD) {
+                    continue;
+                }
+                long offset = layout.p_offset(table, entry);
+                long size = layout.p_filesz(table, entry);
+                segments.add(new long[]{offset, offset + size});
+                if ((layout.p_flags(table, entry) & PF_X) != 0) {
+                    // 2 more bytes for the last instruction, which may cross the end of the segment
+                    keep.add(new long[]{offset, offset + size + 2});
+                    code = true;
+                }
+            }
+            if (!code) {
+                throw new ParseException("No executable segment", 0);
+            }
+            long[] loaded = merge(segments);
+            long gap = 0;
+            for (int k = 0; k < loaded.length; k += 2) {
+                keep.add(new long[]{gap, loaded[k]});
+                gap = loaded[k + 1];
+            }
+            keep.add(new long[]{gap, Long.MAX_VALUE});
+        }
+
+        // Whether the section is named .text. Without the names, which may come later, any could be
+        private static boolean isText(Source names, long name) {
+            if (names == null) {
+                return true;
+            }
+            byte[] text = {'.', 't', 'e', 'x', 't', 0};
+            if (name < 0 || name + text.length > names.size()) {
+                return false;
+            }
+            names.setPos(name);
+            for (byte b : text) {
+                if (names.getNext() != b) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // A table which arrived already, its offsets start at 0, or null
+        private Source table(long offset, long size) throws IOException {
+            if (size > Integer.MAX_VALUE) {
+                return null;
+            }
+            byte[] bytes = read(offset, (int) size);
+            return bytes != null ? new ByteSource(bytes) : null;
+        }
+
+        // Bytes which arrived before the plan, from memory or the temporary file, or null
+        private byte[] read(long offset, int size) throws IOException {
+            if (offset < 0 || offset + size > arrived) {
+                return null;
+            }
+            byte[] bytes = new byte[size];
+            for (int i = 0; i < size; ) {
+                long at = offset + i;
+                Block block = find(blocks, at);
+                if (block != null && block.covers(at, 1)) {
+                    int count = (int) Math.min(size - i, block.start + block.length - at);
+                    System.arraycopy(block.data, (int) (at - block.start), bytes, i, count);
+                    i += count;
+                } else if (spillChannel != null && at >= spillStart) {
+                    readSpill(at, bytes, size - i, i);
+                    i = size;
+                } else {
+                    return null;
+                }
+            }
+            return bytes;
+        }
+
+        private void readSpill(long at, byte[] into, int size, int off) throws IOException {
+            ByteBuffer data = ByteBuffer.wrap(into, off, size);
+            long position = at - spillStart;
+            while (data.hasRemaining()) {
+                int read = spillChannel.read(data, position);
+                if (read < 0) {
+                    throw new IOException("Temporary file ended early");
+                }
+                position += read;
+            }
+        }
+
+        // Whether [pos, pos + count) arrived and is in the temporary file. Bytes in blocks after
+        // spillStart are not, the caller looks there first
+        boolean spilled(long pos, int count) {
+            if (spillChannel == null || pos < spillStart || pos + count > arrived) {
+                return false;
+            }
+            return !planned || kept(pos, pos + count);
+        }
+
+        // Whether [from, to) is inside one kept range
+        private boolean kept(long from, long to) {
+            for (int k = 0; k < ranges.length; k += 2) {
+                if (from >= ranges[k] && to <= ranges[k + 1]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // Reads up to WINDOW_SIZE spilled bytes from pos, stopping at the next block in memory and
+        // at the end of the kept range
+        Block window(long pos) throws IOException {
+            long end = Math.min(pos + WINDOW_SIZE, arrived);
+            Block[] current = blocks;
+            int next = indexOf(current, pos) + 1;
+            if (next < current.length) {
+                end = Math.min(end, current[next].start);
+            }
+            if (planned) {
+                for (int k = 0; k < ranges.length; k += 2) {
+                    if (pos >= ranges[k] && pos < ranges[k + 1]) {
+                        end = Math.min(end, ranges[k + 1]);
+                    }
+                }
+            }
+            Block block = new Block(pos, (int) (end - pos));
+            readSpill(pos, block.data, block.data.length, 0);
+            block.length = block.data.length;
+            return block;
+        }
+
+        synchronized void closeSpill() throws IOException {
+            if (spillChannel != null) {
+                try {
+                    spillChannel.close();
+                } finally {
+                    spillChannel = null;
+                }
+            }
+        }
+
+        private boolean intersects(long from, long to) {
+            for (int k = 0; k < ranges.length; k += 2) {
+                if (from < ranges[k + 1] && ranges[k] < to) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // Ranges in both, bytes the first plan dropped are gone even when the second one wants them
+        private static long[] intersect(long[] a, long[] b) {
+            List<long[]> both = new ArrayList<>();
+            for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+                long start = Math.max(a[i], b[j]);
+                long end = Math.min(a[i + 1], b[j + 1]);
+                if (start < end) {
+                    both.add(new long[]{start, end});
+                }
+                if (a[i + 1] < b[j + 1]) {
+                    i += 2;
+                } else {
+                    j += 2;
+                }
+            }
+            return merge(both);
+        }
+
+        private static long[] merge(List<long[]> keep) {
+            keep.sort(Comparator.comparingLong(range -> range[0]));
+            long[] merged = new long[keep.size() * 2];
+            int count = 0;
+            for (long[] range : keep) {
+                if (range[0] >= range[1]) {
+                    continue;
+                }
+                if (count > 0 && range[0] <= merged[count - 1]) {
+                    merged[count - 1] = Math.max(merged[count - 1], range[1]);
+                } else {
+                    merged[count++] = range[0];
+                    merged[count++] = range[1];
+                }
+            }
+            return Arrays.copyOf(merged, count);
+        }
+
+        // Whether nothing more can arrive for [pos, end)
+        boolean settled(long end) {
+            return ended || planned && arrived >= end;
+        }
+    }
+
+    // Last block starting at or before pos, or null
+    private static Block find(Block[] blocks, long pos) {
+        int index = indexOf(blocks, pos);
+        return index >= 0 ? blocks[index] : null;
+    }
+
+    // Index of the last block starting at or before pos, or -1
+    private static int indexOf(Block[] blocks, long pos) {
+        int low = 0;
+        int high = blocks.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (blocks[mid].start <= pos) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+
+    // The block holding [pos, pos + count), waiting for it, or null when it is not kept or past the end.
+    // Spilled bytes come in a window of this reader, so a reader holds at most WINDOW_SIZE of them
+    private Block block(long pos, int count) {
+        Block block = current;
+        if (block != null && block.covers(pos, count)) {
+            return block;
+        }
+        Store store = this.store;
+        block = find(store.blocks, pos);
+        if (block == null || !block.covers(pos, count)) {
+            boolean spilled;
+            synchronized (store) {
+                while (true) {
+                    block = find(store.blocks, pos);
+                    spilled = store.spilled(pos, count);
+                    if (block != null && block.covers(pos, count) || spilled || store.settled(pos + count)) {
+                        break;
+                    }
+                    try {
+                        store.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return null;
+                    }
+                }
+            }
+            if (block == null || !block.covers(pos, count)) {
+                // A value starting in memory and ending in the file is read byte by byte
+                if (!spilled || block != null && block.covers(pos, 1)) {
+                    return null;
+                }
+                try {
+                    block = store.window(pos);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                if (!block.covers(pos, count)) {
+                    return null;
+                }
+            }
+        }
+        current = block;
+        return block;
+    }
+
+    // Bytes of one value crossing blocks are read one by one
+    private long littleEndian(int count) {
+        long value = 0;
+        for (int i = 0; i < count; i++) {
+            value |= byteAt(pos + i) << (8 * i);
+        }
+        pos += count;
+        return value;
+    }
+
+    private long byteAt(long at) {
+        Block block = block(at, 1);
+        if (block == null) {
+            throw new IndexOutOfBoundsException("Byte " + at + " of the stream was not kept");
+        }
+        return block.data[(int) (at - block.start)] & 0xffL;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return hasNext(1);
+    }
+
+    @Override
+    public boolean hasNext(long count) {
+        if (pos < 0 || count > Integer.MAX_VALUE) {
+            return false;
+        }
+        if (block(pos, (int) count) != null) {
+            return true;
+        }
+        // Kept, but across blocks
+        for (long at = pos; at < pos + count; at++) {
+            if (block(at, 1) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public long getNext() {
+        return byteAt(pos++);
+    }
+
+    @Override
+    public long getNext2() {
+        Block block = block(pos, 2);
+        if (block == null) {
+            return littleEndian(2);
+        }
+        long value = block.view.getShort((int) (pos - block.start)) & 0xffffL;
+        pos += 2;
+        return value;
+    }
+
+    @Override
+    public long getNext4() {
+        Block block = block(pos, 4);
+        if (block == null) {
+            return littleEndian(4);
+        }
+        long value = block.view.getInt((int) (pos - block.start)) & 0xffffffffL;
+        pos += 4;
+        return value;
+    }
+
+    @Override
+    public long getNext8() {
+        Block block = block(pos, 8);
+        if (block == null) {
+            return littleEndian(8);
+        }
+        long value = block.view.getLong((int) (pos - block.start));
+        pos += 8;
+        return value;
+    }
+
+    @Override
+    public void getBytes(byte[] dst, int offset, int length) {
+        for (int i = 0; i < length; ) {
+            Block block = block(pos, 1);
+            if (block == null) {
+                throw new IndexOutOfBoundsException("Byte " + pos + " of the stream was not kept");
+            }
+            int count = (int) Math.min(length - i, block.start + block.length - pos);
+            System.arraycopy(block.data, (int) (pos - block.start), dst, offset + i, count);
+            i += count;
+            pos += count;
+        }
+    }
+
+    // Waits for the end of the stream
+    @Override
+    public long size() {
+        Store store = this.store;
+        synchronized (store) {
+            while (!store.ended) {
+                try {
+                    store.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        return store.arrived;
+    }
+
+    // Waits only until the bytes arrived
+    @Override
+    public long available(long pos, long count) {
+        long end = pos + count;
+        synchronized (store) {
+            while (!store.ended && store.arrived < end) {
+                try {
+                    store.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        return Math.max(0, Math.min(count, store.arrived - pos));
+    }
+
+    @Override
+    public long getPos() {
+        return pos;
+    }
+
+    @Override
+    public void setPos(long newPos) {
+        pos = newPos;
+    }
+
+    @Override
+    public void error(String message) throws ParseException {
+        throw new ParseException("Error while parsing: " + message + "\nPosition #", (int) pos);
+    }
+
+    @Override
+    public Source duplicate() {
+        return new StreamSource(store, pos);
+    }
+}
@@ -0,0 +1,114 @@
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.Arrays;
+
+// View of an ELF string table section. The section is read once, and every name is decoded
+// at most once and then cached by its offset. Names sharing a suffix, as linkers lay them out,
+// share the terminating zero, so any offset is resolved by a binary search over the zeros.
+// Not thread-safe
+public class StringTable {
+    private final Source source;
+    private final long fileOffset;
+    private final byte[] bytes;
+    // Sorted positions of all zero bytes in the table
+    private final int[] zeros;
+    private final boolean intern;
+
+    // Open addressing map from offset to name, offsets are stored + 1 so that 0 means a free slot
+    private int[] keys = new int[64];
+    private String[] values = new String[64];
+    private int size;
+
+    public StringTable(Source source, long fileOffset, long tableSize, boolean intern) {
+        this.source = source.duplicate();
+        this.fileOffset = fileOffset;
+        this.intern = intern;
+        long available = source.available(fileOffset, tableSize);
+        this.bytes = new byte[(int) available];
+        this.source.setPos(fileOffset);
+        this.source.getBytes(bytes, 0, bytes.length);
+        int count = 0;
+        int[] found = new int[16];
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == 0) {
+                if (count == found.length) {
+                    found = Arrays.copyOf(found, count * 2);
+                }
+                found[count++] = i;
+            }
+        }
+        this.zeros = Arrays.copyOf(found, count);
+    }
+
+    public String get(long offset) throws ParseException {
+        if (offset < 0 || offset >= bytes.length) {
+            return readOutside(offset);
+        }
+        int key = (int) offset + 1;
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        int zero = Arrays.binarySearch(zeros, (int) offset);
+        if (zero < 0) {
+            zero = -zero - 1;
+        }
+        if (zero == zeros.length) {
+            // Not terminated inside the section
+            return readOutside(offset);
+        }
+        String name = new String(bytes, (int) offset, zeros[zero] - (int) offset, StandardCharsets.ISO_8859_1);
+        if (intern) {
+            name = name.intern();
+        }
+        keys[slot] = key;
+        values[slot] = name;
+        if (++size * 2 > keys.length) {
+            grow();
+        }
+        return name;
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        String[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new String[oldValues.length * 2];
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = hash(oldKeys[i]) & mask;
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    // Names which run past the section are read from the file as they are, without caching
+    private String readOutside(long offset) throws ParseException {
+        source.setPos(fileOffset + offset);
+        StringBuilder name = new StringBuilder();
+        while (true) {
+            if (!source.hasNext()) {
+                source.error("Unexpected end of file");
+            }
+            char c = (char) source.getNext();
+            if (c == 0) {
+                return name.toString();
+            }
+            name.append(c);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+import java.util.Arrays;
+
+// Address to symbol index over sorted primitive arrays. Symbols are added first, then the index
+// is sealed and answers exact and nearest preceding symbol lookups without allocating.
+// When several symbols share an address the last added one wins, as with Map.put
+public final class SymbolIndex {
+    private long[] addrs = new long[16];
+    private long[] sizes = new long[16];
+    private String[] names = new String[16];
+    private int count;
+    private boolean sealed;
+
+    public void add(long addr, long size, String name) {
+        if (sealed) {
+            throw new IllegalStateException("Symbol index is already sealed");
+        }
+        if (count == addrs.length) {
+            addrs = Arrays.copyOf(addrs, count * 2);
+            sizes = Arrays.copyOf(sizes, count * 2);
+            names = Arrays.copyOf(names, count * 2);
+        }
+        addrs[count] = addr;
+        sizes[count] = size;
+        names[count] = name;
+        count++;
+    }
+
+    // Sorts the symbols, no symbols can be added after it
+    public SymbolIndex seal() {
+        if (sealed) {
+            return this;
+        }
+        long[] sorted = Arrays.copyOf(addrs, count);
+        Arrays.sort(sorted);
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (unique == 0 || sorted[unique - 1] != sorted[i]) {
+                sorted[unique++] = sorted[i];
+            }
+        }
+        long[] sortedSizes = new long[unique];
+        String[] sortedNames = new String[unique];
+        // In insertion order, so later symbols overwrite earlier ones at the same address
+        for (int i = 0; i < count; i++) {
+            int at = Arrays.binarySearch(sorted, 0, unique, addrs[i]);
+            sortedSizes[at] = sizes[i];
+            sortedNames[at] = names[i];
+        }
+        addrs = Arrays.copyOf(sorted, unique);
+        sizes = sortedSizes;
+        names = sortedNames;
+        count = unique;
+        sealed = true;
+        return this;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public long address(int index) {
+        return addrs[index];
+    }
+
+    public long symbolSize(int index) {
+        return sizes[index];
+    }
+
+    public String name(int index) {
+        return names[index];
+    }
+
+    // Index of the symbol at exactly addr, or -1
+    public int indexOf(long addr) {
+        checkSealed();
+        int at = Arrays.binarySearch(addrs, 0, count, addr);
+        return at >= 0 ? at : -1;
+    }
+
+    public String get(long addr) {
+        int at = indexOf(addr);
+        return at >= 0 ? names[at] : null;
+    }
+
+    // Index of the last symbol at or before addr, or -1. A symbol with a known size only covers
+    // addresses inside it, a symbol of size 0 covers everything up to the next one
+    public int indexOfPreceding(long addr) {
+        checkSealed();
+        int at = Arrays.binarySearch(addrs, 0, count, addr);
+        if (at < 0) {
+            at = -at - 2;
+        }
+        if (at < 0 || (sizes[at] > 0 && addr - addrs[at] >= sizes[at])) {
+            return -1;
+        }
+        return at;
+    }
+
+    private void checkSealed() {
+        if (!sealed) {
+            throw new IllegalStateException("Symbol index is not sealed yet");
+        }
+    }
+}
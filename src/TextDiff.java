@@ -0,0 +1,173 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Function level comparison of code between two builds. Functions are matched by name and
+// one is unchanged when it has the same size and bytes, even if it moved; functions of size 0 are
+// compared up to the next function. Unchanged functions can reuse the instructions decoded for
+// the previous build
+public final class TextDiff {
+    private final SymbolIndex oldFunctions;
+    private final SymbolIndex newFunctions;
+    // Per function of the new build: index of the same function in the old one, or -1
+    private final int[] matches;
+    private final boolean[] unchanged;
+    private final boolean[] removed;
+    // Unchanged functions inside code regions of both builds, by address in the new one
+    private long[] reusedAddresses = new long[16];
+    private long[] reusedOldAddresses = new long[16];
+    private long[] reusedSizes = new long[16];
+    private int reusedCount;
+
+    public TextDiff(ElfParser previous, ElfParser current) {
+        oldFunctions = previous.functions();
+        newFunctions = current.functions();
+        Map<String, Integer> oldByName = new HashMap<>();
+        for (int i = 0; i < oldFunctions.size(); i++) {
+            if (!oldFunctions.name(i).isEmpty()) {
+                oldByName.put(oldFunctions.name(i), i);
+            }
+        }
+        matches = new int[newFunctions.size()];
+        unchanged = new boolean[newFunctions.size()];
+        removed = new boolean[oldFunctions.size()];
+        Arrays.fill(removed, true);
+        byte[] oldBytes = new byte[64 * 1024];
+        byte[] newBytes = new byte[64 * 1024];
+        for (int i = 0; i < newFunctions.size(); i++) {
+            Integer match = oldByName.get(newFunctions.name(i));
+            matches[i] = match != null ? match : -1;
+            if (match == null) {
+                continue;
+            }
+            removed[match] = false;
+            long size = extent(current, newFunctions, i);
+            long oldAddress = oldFunctions.address(match);
+            long address = newFunctions.address(i);
+            CodeRegion oldRegion = previous.regionAt(oldAddress, size);
+            CodeRegion region = current.regionAt(address, size);
+            if (oldRegion == null && region == null) {
+                // No code in either build, like UNDEF or ABS symbols, only the symbol itself can change
+                unchanged[i] = address == oldAddress && size == oldFunctions.symbolSize(match);
+                continue;
+            }
+            if (size != extent(previous, oldFunctions, match) || !inFile(previous, oldRegion, oldAddress, size)
+                    || !inFile(current, region, address, size)) {
+                continue;
+            }
+            unchanged[i] = sameBytes(previous.source(), oldRegion.offset + oldAddress - oldRegion.address,
+                    current.source(), region.offset + address - region.address, size, oldBytes, newBytes);
+            // Instructions decoded for another base ISA can not be reused
+            if (unchanged[i] && size > 0 && previous.xlen() == current.xlen()) {
+                addReused(address, oldAddress, size);
+            }
+        }
+    }
+
+    // Size of function i, or for a function of size 0 the bytes until the next one or the end of its
+    // region, as in --cfg
+    private static long extent(ElfParser parser, SymbolIndex functions, int i) {
+        long size = functions.symbolSize(i);
+        long address = functions.address(i);
+        CodeRegion region = parser.regionAt(address, 0);
+        if (size > 0 || region == null) {
+            return size;
+        }
+        long end = region.address + region.size;
+        for (int k = i + 1; k < functions.size(); k++) {
+            if (functions.address(k) > address) {
+                end = Math.min(end, functions.address(k));
+                break;
+            }
+        }
+        return end - address;
+    }
+
+    private static boolean inFile(ElfParser parser, CodeRegion region, long address, long size) {
+        return region != null && region.offset + address - region.address + size <= parser.source().size();
+    }
+
+    private static boolean sameBytes(Source a, long aPos, Source b, long bPos, long length,
+                                     byte[] aBytes, byte[] bBytes) {
+        Source aSrc = a.duplicate();
+        Source bSrc = b.duplicate();
+        aSrc.setPos(aPos);
+        bSrc.setPos(bPos);
+        for (long done = 0; done < length; ) {
+            int size = (int) Math.min(aBytes.length, length - done);
+            aSrc.getBytes(aBytes, 0, size);
+            bSrc.getBytes(bBytes, 0, size);
+            if (!Arrays.equals(aBytes, 0, size, bBytes, 0, size)) {
+                return false;
+            }
+            done += size;
+        }
+        return true;
+    }
+
+    private void addReused(long address, long oldAddress, long size) {
+        if (reusedCount == reusedAddresses.length) {
+            reusedAddresses = Arrays.copyOf(reusedAddresses, reusedCount * 2);
+            reusedOldAddresses = Arrays.copyOf(reusedOldAddresses, reusedCount * 2);
+            reusedSizes = Arrays.copyOf(reusedSizes, reusedCount * 2);
+        }
+        reusedAddresses[reusedCount] = address;
+        reusedOldAddresses[reusedCount] = oldAddress;
+        reusedSizes[reusedCount] = size;
+        reusedCount++;
+    }
+
+    // Unchanged functions, sorted by address in the new build
+    public int reusedCount() {
+        return reusedCount;
+    }
+
+    public long reusedAddress(int index) {
+        return reusedAddresses[index];
+    }
+
+    public long reusedOldAddress(int index) {
+        return reusedOldAddresses[index];
+    }
+
+    public long reusedSize(int index) {
+        return reusedSizes[index];
+    }
+
+    // One line per changed ("~"), added ("+") and removed ("-") function with its address,
+    // then a summary line
+    public void write(Appendable out) throws IOException {
+        LineFormatter line = new LineFormatter();
+        int same = 0;
+        int changed = 0;
+        int added = 0;
+        for (int i = 0; i < newFunctions.size(); i++) {
+            if (newFunctions.name(i).isEmpty()) {
+                continue;
+            }
+            if (unchanged[i]) {
+                same++;
+                continue;
+            }
+            if (matches[i] >= 0) {
+                changed++;
+                line.clear().append("~ ");
+            } else {
+                added++;
+                line.clear().append("+ ");
+            }
+            line.hex(newFunctions.address(i), 8).append(' ').append(newFunctions.name(i)).append('\n').writeTo(out);
+        }
+        int gone = 0;
+        for (int i = 0; i < oldFunctions.size(); i++) {
+            if (removed[i] && !oldFunctions.name(i).isEmpty()) {
+                gone++;
+                line.clear().append("- ").hex(oldFunctions.address(i), 8).append(' ')
+                        .append(oldFunctions.name(i)).append('\n').writeTo(out);
+            }
+        }
+        line.clear().append("# ").decimal(same, 1).append(" unchanged, ").decimal(changed, 1).append(" changed, ")
+                .decimal(added, 1).append(" added, ").decimal(gone, 1).append(" removed\n").writeTo(out);
+    }
+}
@@ -0,0 +1,108 @@
+import java.text.ParseException;
+
+// Finds where instructions start for blocks of code instead of one instruction at a time.
+//
+// Whether a halfword starts an instruction depends on all the ones before it, but only through runs of
+// halfwords with the low bits 11: a run entered on a start alternates start, second half, start...
+// So starts are worked out for 64 halfwords at once from the bitmap of those low bits, with the carry
+// trick used for escaped quotes in JSON parsers, and only one bit of state goes from a block to the next.
+//
+// This is the scalar version. VectorTextScanner (src-vector, built by the vector profile on Java 17+)
+// builds the bitmaps with the Vector API, and is used when the JVM runs with
+// --add-modules jdk.incubator.vector. Both give the same results
+class TextScanner {
+    // Bytes read from the source at once, a multiple of 128 so bitmaps of full blocks have no partial word
+    static final int BLOCK_SIZE = 16 * 1024;
+
+    private static final long EVEN_BITS = 0x5555555555555555L;
+    private static final TextScanner INSTANCE = load();
+
+    static TextScanner get() {
+        return INSTANCE;
+    }
+
+    private static TextScanner load() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                TextScanner scanner = (TextScanner) Class.forName("VectorTextScanner").getDeclaredConstructor().newInstance();
+                // Missing incubator methods only fail when called
+                scanner.longBits(new byte[128], 0, 64, new long[1]);
+                return scanner;
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // Built without the vector profile, or a JDK whose incubator API changed
+            }
+        }
+        return new TextScanner();
+    }
+
+    String name() {
+        return "scalar";
+    }
+
+    // Sets bit k % 64 of longBits[k / 64] for each of the halves halfwords from offset that has the low
+    // bits 11, so it is the first half of a 32-bit instruction when an instruction starts there.
+    // Bits past the last halfword are cleared
+    void longBits(byte[] code, int offset, int halves, long[] longBits) {
+        int words = (halves + 63) >>> 6;
+        for (int w = 0; w < words; w++) {
+            long bits = 0;
+            int base = offset + (w << 7);
+            int count = Math.min(64, halves - (w << 6));
+            for (int k = 0; k < count; k++) {
+                if ((code[base + 2 * k] & 3) == 3) {
+                    bits |= 1L << k;
+                }
+            }
+            longBits[w] = bits;
+        }
+    }
+
+    // Turns the bitmaps of longBits made by longBits() into instruction starts, bit k set when halfword k
+    // starts an instruction. carry is 1 when the first halfword is the second half of an instruction started
+    // before the block. Returns the carry for the halfword after the block, where it ends on a partial
+    // instruction; words should only have bits of the block's halfwords
+    static long starts(long[] longBits, int words, long carry, long[] starts) {
+        for (int w = 0; w < words; w++) {
+            long heads = longBits[w] & ~carry;
+            long follows = (heads << 1) | carry;
+            // Runs of heads that start at an odd bit, where the alternation is shifted
+            long oddStarts = heads & ~EVEN_BITS & ~follows;
+            long sum = oddStarts + heads;
+            carry = Long.compareUnsigned(sum, heads) < 0 ? 1 : 0;
+            long seconds = (EVEN_BITS ^ (sum << 1)) & follows;
+            starts[w] = ~seconds;
+        }
+        return carry;
+    }
+
+    // Same walk as decoding [from, to) of the region, but only looks at instruction lengths. Returns the
+    // offsets right after the last instruction starting before to, when entering the range at from and
+    // when entering it at from + 2 (after a 32-bit instruction crossing into it), found in one pass
+    long[] scan(Source src, long regionPos, long from, long to) throws ParseException {
+        byte[] code = new byte[BLOCK_SIZE];
+        long[] longBits = new long[BLOCK_SIZE / 128];
+        long[] starts = new long[BLOCK_SIZE / 128];
+        long[] carries = {0, 1};
+        long i = from;
+        src.setPos(regionPos + from);
+        while (i < to) {
+            int length = (int) Math.min(BLOCK_SIZE, (to - i + 1) & ~1L);
+            if (!src.hasNext(length)) {
+                src.error("Unexpected end of file");
+            }
+            src.getBytes(code, 0, length);
+            int halves = length / 2;
+            int words = (halves + 63) >>> 6;
+            int tail = halves & 63;
+            longBits(code, 0, halves, longBits);
+            for (int entry = 0; entry < 2; entry++) {
+                long last = starts(longBits, words, carries[entry], starts);
+                // The carry out of a partial last word comes from its highest halfword, not bit 63
+                carries[entry] = tail == 0 ? last
+                        : starts[words - 1] >>> (tail - 1) & longBits[words - 1] >>> (tail - 1) & 1;
+            }
+            i += length;
+        }
+        return new long[]{i + 2 * carries[0], i + 2 * carries[1]};
+    }
+}
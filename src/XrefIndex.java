@@ -0,0 +1,195 @@
+import java.util.Arrays;
+
+// Cross references: for every address jumped, branched or called to, the addresses of the instructions
+// doing it. Stored in CSR layout: targets are sorted, and the sources of targets[t] are
+// sources[starts[t] .. starts[t + 1]), in the order they were decoded
+public final class XrefIndex {
+    public static final byte CALL = 0;
+    public static final byte JUMP = 1;
+    public static final byte BRANCH = 2;
+
+    private static final String[] KIND_NAMES = {"call", "jump", "branch"};
+
+    private final long[] targets;
+    private final int[] starts;
+    private final long[] sources;
+    private final byte[] kinds;
+
+    private XrefIndex(long[] targets, int[] starts, long[] sources, byte[] kinds) {
+        this.targets = targets;
+        this.starts = starts;
+        this.sources = sources;
+        this.kinds = kinds;
+    }
+
+    public static String kindName(byte kind) {
+        return KIND_NAMES[kind];
+    }
+
+    public int targetCount() {
+        return targets.length;
+    }
+
+    public long target(int index) {
+        return targets[index];
+    }
+
+    public int size() {
+        return sources.length;
+    }
+
+    // Index of the target at addr, or -1 when nothing refers to it
+    public int indexOf(long addr) {
+        int at = Arrays.binarySearch(targets, addr);
+        return at >= 0 ? at : -1;
+    }
+
+    // References to targets[index] are [first(index), first(index + 1))
+    public int first(int index) {
+        return starts[index];
+    }
+
+    public long source(int ref) {
+        return sources[ref];
+    }
+
+    public byte kind(int ref) {
+        return kinds[ref];
+    }
+
+    // Collects references from instructions in address order. A builder sees one stretch of code,
+    // stretches decoded apart are joined by append in address order
+    public static final class Builder {
+        private final long addrMask;
+        private long[] targets = new long[64];
+        private long[] sources = new long[64];
+        private byte[] kinds = new byte[64];
+        private int count;
+        // The auipc right before the current instruction, for auipc + jalr pairs
+        private boolean afterAuipc;
+        private int auipcRd;
+        private long auipcAddr;
+        private long auipcImm;
+        private boolean empty = true;
+        // The first instruction, when it is a jalr which may pair with an auipc ending the previous stretch
+        private boolean startsWithJalr;
+        private long jalrAddr;
+        private int jalrRd;
+        private int jalrRs1;
+        private long jalrImm;
+
+        public Builder(int xlen) {
+            addrMask = xlen == 32 ? 0xffffffffL : -1L;
+        }
+
+        public void add(Instruction insn, long addr) {
+            boolean first = empty;
+            empty = false;
+            switch (insn.opcode) {
+                case Instruction.JAL:
+                    add(addr + insn.imm, addr, insn.rd != 0 ? CALL : JUMP);
+                    break;
+                case Instruction.C_JAL:
+                    add(addr + insn.imm, addr, CALL);
+                    break;
+                case Instruction.C_J:
+                    add(addr + insn.imm, addr, JUMP);
+                    break;
+                case Instruction.BEQ:
+                case Instruction.BNE:
+                case Instruction.BLT:
+                case Instruction.BGE:
+                case Instruction.BLTU:
+                case Instruction.BGEU:
+                case Instruction.C_BEQZ:
+                case Instruction.C_BNEZ:
+                    add(addr + insn.imm, addr, BRANCH);
+                    break;
+                case Instruction.JALR:
+                    if (afterAuipc && insn.rs1 == auipcRd && auipcAddr + 4 == addr) {
+                        add(auipcAddr + auipcImm + insn.imm, addr, insn.rd != 0 ? CALL : JUMP);
+                    } else if (first) {
+                        startsWithJalr = true;
+                        jalrAddr = addr;
+                        jalrRd = insn.rd;
+                        jalrRs1 = insn.rs1;
+                        jalrImm = insn.imm;
+                    }
+                    break;
+                default:
+                    break;
+            }
+            afterAuipc = insn.opcode == Instruction.AUIPC && insn.rd != 0;
+            if (afterAuipc) {
+                auipcRd = insn.rd;
+                auipcAddr = addr;
+                auipcImm = insn.imm;
+            }
+        }
+
+        private void add(long target, long source, byte kind) {
+            if (count == targets.length) {
+                targets = Arrays.copyOf(targets, count * 2);
+                sources = Arrays.copyOf(sources, count * 2);
+                kinds = Arrays.copyOf(kinds, count * 2);
+            }
+            targets[count] = target & addrMask;
+            sources[count] = source;
+            kinds[count] = kind;
+            count++;
+        }
+
+        // Adds the references of a builder which saw the code right after this one
+        public void append(Builder next) {
+            if (afterAuipc && next.startsWithJalr && next.jalrRs1 == auipcRd && auipcAddr + 4 == next.jalrAddr) {
+                add(auipcAddr + auipcImm + next.jalrImm, next.jalrAddr, next.jalrRd != 0 ? CALL : JUMP);
+            }
+            for (int k = 0; k < next.count; k++) {
+                add(next.targets[k], next.sources[k], next.kinds[k]);
+            }
+            if (!next.empty) {
+                empty = false;
+                afterAuipc = next.afterAuipc;
+                auipcRd = next.auipcRd;
+                auipcAddr = next.auipcAddr;
+                auipcImm = next.auipcImm;
+            }
+        }
+
+        // Code which does not follow the previous one, like the start of another region
+        public void gap() {
+            afterAuipc = false;
+        }
+
+        public XrefIndex build() {
+            long[] unique = Arrays.copyOf(targets, count);
+            Arrays.sort(unique);
+            int size = 0;
+            for (int k = 0; k < count; k++) {
+                if (size == 0 || unique[size - 1] != unique[k]) {
+                    unique[size++] = unique[k];
+                }
+            }
+            unique = Arrays.copyOf(unique, size);
+            // Counting sort by target keeps the sources of each target in decoding order
+            int[] starts = new int[size + 1];
+            int[] at = new int[count];
+            for (int k = 0; k < count; k++) {
+                at[k] = Arrays.binarySearch(unique, targets[k]);
+                starts[at[k] + 1]++;
+            }
+            for (int t = 0; t < size; t++) {
+                starts[t + 1] += starts[t];
+            }
+            int[] next = Arrays.copyOf(starts, size);
+            long[] sortedSources = new long[count];
+            byte[] sortedKinds = new byte[count];
+            for (int k = 0; k < count; k++) {
+                int ref = next[at[k]]++;
+                sortedSources[ref] = sources[k];
+                sortedKinds[ref] = kinds[k];
+            }
+            return new XrefIndex(unique, starts, sortedSources, sortedKinds);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Annotations of --resolve for short RV32 sequences, compressed forms must resolve the same addresses
+// as the full ones
+class ConstantTrackerTest {
+    private static final int LUI_A0_1 = 0x00001537;          // lui a0, 1
+    private static final int C_LUI_A0_1 = 0x6505;            // c.lui a0, 1
+    private static final int LW_A1_8_A0 = 0x00852583;        // lw a1, 8(a0)
+    private static final int C_LW_A1_8_A0 = 0x450c;          // c.lw a1, 8(a0)
+    private static final int ADDI_A0_A0_8 = 0x00850513;      // addi a0, a0, 8
+    private static final int C_ADDI_A0_8 = 0x0521;           // c.addi a0, 8
+    private static final int LI_A0_0X400 = 0x40000513;       // addi a0, zero, 1024
+    private static final int C_LI_A0_8 = 0x4521;             // c.li a0, 8
+
+    private final SymbolIndex symbols = symbols();
+
+    @Test
+    void luiAndCLui() {
+        String expected = resolve(LUI_A0_1, LW_A1_8_A0);
+        assertEquals("| # 00001008 <data+0x8>", expected);
+        assertEquals(expected, resolve(C_LUI_A0_1, LW_A1_8_A0));
+        assertEquals(expected, resolve(C_LUI_A0_1, C_LW_A1_8_A0));
+    }
+
+    @Test
+    void addiAndCAddi() {
+        String expected = resolve(LUI_A0_1, ADDI_A0_A0_8);
+        assertEquals("| # 00001008 <data+0x8>", expected);
+        assertEquals(expected, resolve(LUI_A0_1, C_ADDI_A0_8));
+        assertEquals(resolve(LUI_A0_1, ADDI_A0_A0_8, LW_A1_8_A0), resolve(C_LUI_A0_1, C_ADDI_A0_8, C_LW_A1_8_A0));
+    }
+
+    // Constants are not annotated by themselves, only where they are used as an address in a symbol
+    @Test
+    void li() {
+        assertEquals("|| # 00000410 <low+0x10>", resolve(LI_A0_0X400, ADDI_A0_A0_8, LW_A1_8_A0));
+        assertEquals("||", resolve(C_LI_A0_8, C_ADDI_A0_8, C_LW_A1_8_A0));
+    }
+
+    // Annotations of each instruction of the sequence, joined by "|"
+    private String resolve(int... words) {
+        ConstantTracker tracker = new ConstantTracker(symbols, 32);
+        tracker.reset();
+        Instruction insn = new Instruction();
+        StringBuilder annotations = new StringBuilder();
+        long addr = 0x100;
+        for (int k = 0; k < words.length; k++) {
+            if ((words[k] & 3) == 3) {
+                InstructionDecoder.decode32(words[k] & 0xffffffffL, insn, 32);
+            } else {
+                InstructionDecoder.decode16(words[k], insn, 32);
+            }
+            StringBuilder command = new StringBuilder();
+            tracker.next(insn, addr, false, command);
+            annotations.append(k > 0 ? "|" : "").append(command);
+            addr += insn.length;
+        }
+        return annotations.toString();
+    }
+
+    private static SymbolIndex symbols() {
+        SymbolIndex symbols = new SymbolIndex();
+        symbols.add(0x400, 0x100, "low");
+        symbols.add(0x1000, 0x100, "data");
+        return symbols.seal();
+    }
+}
@@ -0,0 +1,119 @@
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+// Runs Main on the sample images of src/test/resources/golden and compares the listings byte for byte with
+// the ones the first version of the disassembler wrote for them. Images and listings are gzipped; the
+// listing of big is too large to keep, only its SHA-256 is. Options must not change a byte of them
+class GoldenListingTest {
+    @TempDir
+    Path dir;
+
+    @ParameterizedTest
+    @ValueSource(strings = {"small", "mid", "odd", "rvc", "nonascii", "suffix"})
+    void listing(String name) throws IOException {
+        byte[] expected = resource(name + ".txt.gz");
+        for (String option : new String[]{null, "--parallel=3", "--lazy-tables"}) {
+            byte[] actual = disassemble(name, option);
+            int at = mismatch(expected, actual);
+            if (at >= 0) {
+                fail(name + " with " + option + " differs from the golden listing at line " + line(expected, at));
+            }
+        }
+    }
+
+    // Branch targets start blocks for --resolve whether or not they are labelled
+    @ParameterizedTest
+    @ValueSource(strings = {"mid", "rvc"})
+    void resolveWithoutLabels(String name) throws IOException {
+        String labelled = new String(disassemble(name, "--resolve", "--labels"), StandardCharsets.ISO_8859_1);
+        String plain = new String(disassemble(name, "--resolve"), StandardCharsets.ISO_8859_1);
+        assertEquals(labelled.replaceAll("(?m)^([0-9a-f]{8}) +LOC_[0-9a-f]+: ", "$1             "), plain);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"big"})
+    void digest(String name) throws IOException {
+        String expected = new String(resource(name + ".txt.sha256"), StandardCharsets.US_ASCII).trim();
+        for (String option : new String[]{null, "--parallel=3"}) {
+            assertEquals(expected, sha256(disassemble(name, option)), name + " with " + option);
+        }
+    }
+
+    private byte[] disassemble(String name, String... options) throws IOException {
+        Path input = dir.resolve(name + ".elf");
+        if (!Files.exists(input)) {
+            Files.write(input, resource(name + ".elf.gz"));
+        }
+        Path output = dir.resolve(name + ".txt");
+        Files.deleteIfExists(output);
+        List<String> args = new ArrayList<>();
+        for (String option : options) {
+            if (option != null) {
+                args.add(option);
+            }
+        }
+        args.add(input.toString());
+        args.add(output.toString());
+        Main.main(args.toArray(new String[0]));
+        return Files.readAllBytes(output);
+    }
+
+    // Contents of the resource, gunzipped for *.gz
+    private static byte[] resource(String name) throws IOException {
+        InputStream in = GoldenListingTest.class.getResourceAsStream("/golden/" + name);
+        if (in == null) {
+            throw new IOException("No test resource golden/" + name);
+        }
+        try (InputStream data = name.endsWith(".gz") ? new GZIPInputStream(in) : in) {
+            return data.readAllBytes();
+        }
+    }
+
+    // Index of the first differing byte, -1 when the same
+    private static int mismatch(byte[] expected, byte[] actual) {
+        int length = Math.min(expected.length, actual.length);
+        for (int k = 0; k < length; k++) {
+            if (expected[k] != actual[k]) {
+                return k;
+            }
+        }
+        return expected.length == actual.length ? -1 : length;
+    }
+
+    private static int line(byte[] text, int at) {
+        int line = 1;
+        for (int k = 0; k < at; k++) {
+            if (text[k] == '\n') {
+                line++;
+            }
+        }
+        return line;
+    }
+
+    private static String sha256(byte[] bytes) {
+        try {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(bytes)) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
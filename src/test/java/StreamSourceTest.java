@@ -0,0 +1,89 @@
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Listings read from a stream are the same as the golden ones, whether the kept bytes fit in memory,
+// partly go to the temporary file or all of them do
+class StreamSourceTest {
+    @ParameterizedTest
+    @ValueSource(strings = {"small", "mid", "rvc"})
+    void sameAsGolden(String name) throws IOException, ParseException {
+        check(name, resource(name + ".elf.gz"));
+    }
+
+    // Planned from the program headers first, then narrowed by the section headers at the end
+    @ParameterizedTest
+    @ValueSource(strings = {"small", "mid", "rvc"})
+    void withProgramHeaders(String name) throws IOException, ParseException {
+        check(name, withSegments(resource(name + ".elf.gz")));
+    }
+
+    private static void check(String name, byte[] elf) throws IOException, ParseException {
+        String expected = new String(resource(name + ".txt.gz"), StandardCharsets.ISO_8859_1);
+        for (long limit : new long[]{StreamSource.DEFAULT_MEMORY_LIMIT, 4096, 0}) {
+            for (int parallelism : new int[]{1, 3}) {
+                StreamSource source = new StreamSource(new ByteArrayInputStream(elf), limit);
+                ElfParser parser = new ElfParser(source);
+                parser.setParallelism(parallelism);
+                StringWriter out = new StringWriter();
+                parser.parse(out);
+                source.close();
+                assertEquals(expected, out.toString(), name + " with memory limit " + limit + ", " + parallelism + " threads");
+            }
+        }
+    }
+
+    // The 32-bit file with a PT_LOAD segment for each allocated section after its header, executable
+    // for code and writable otherwise, and the rest moved behind them
+    private static byte[] withSegments(byte[] elf) {
+        ByteBuffer in = ByteBuffer.wrap(elf).order(ByteOrder.LITTLE_ENDIAN);
+        int shoff = in.getInt(0x20);
+        int shentsize = in.getShort(0x2e);
+        int shnum = in.getShort(0x30);
+        int loads = 0;
+        for (int k = 0; k < shnum; k++) {
+            int entry = shoff + k * shentsize;
+            if ((in.getInt(entry + 8) & 2) != 0 && in.getInt(entry + 4) != 8) {
+                loads++;
+            }
+        }
+        int shift = loads * 32;
+        ByteBuffer out = ByteBuffer.allocate(elf.length + shift).order(ByteOrder.LITTLE_ENDIAN);
+        out.put(elf, 0, 0x34).put(new byte[shift]).put(elf, 0x34, elf.length - 0x34);
+        out.putInt(0x1c, 0x34).putShort(0x2a, (short) 32).putShort(0x2c, (short) loads).putInt(0x20, shoff + shift);
+        int ph = 0x34;
+        for (int k = 0; k < shnum; k++) {
+            int entry = shoff + shift + k * shentsize;
+            int offset = out.getInt(entry + 0x10);
+            if (offset != 0) {
+                out.putInt(entry + 0x10, offset + shift);
+            }
+            int flags = out.getInt(entry + 8);
+            if ((flags & 2) != 0 && out.getInt(entry + 4) != 8) {
+                int size = out.getInt(entry + 0x14);
+                out.putInt(ph, 1).putInt(ph + 4, offset + shift).putInt(ph + 8, out.getInt(entry + 0xc))
+                        .putInt(ph + 12, out.getInt(entry + 0xc)).putInt(ph + 16, size).putInt(ph + 20, size)
+                        .putInt(ph + 24, (flags & 4) != 0 ? 5 : 6).putInt(ph + 28, 4);
+                ph += 32;
+            }
+        }
+        return out.array();
+    }
+
+    private static byte[] resource(String name) throws IOException {
+        try (InputStream in = new GZIPInputStream(StreamSourceTest.class.getResourceAsStream("/golden/" + name))) {
+            return in.readAllBytes();
+        }
+    }
+}
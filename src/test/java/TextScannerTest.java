@@ -0,0 +1,87 @@
+import org.junit.jupiter.api.Test;
+
+import java.text.ParseException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The scalar TextScanner, the one TextScanner.get() picked (the Vector API one when the JVM has
+// jdk.incubator.vector, as under the vector profile) and a walk of one instruction at a time must agree
+// on random code, including ranges that cross BLOCK_SIZE and bitmap words with a carry
+class TextScannerTest {
+    private final TextScanner scalar = new TextScanner();
+    private final TextScanner picked = TextScanner.get();
+
+    @Test
+    void pickedScanner() {
+        // Set by the vector profile, so a build that silently falls back to scalar fails
+        if (Boolean.getBoolean("textscanner.vector")) {
+            assertTrue(picked.name().startsWith("vector"), picked.name());
+        }
+    }
+
+    @Test
+    void longBitsAndStarts() {
+        Random random = new Random(1);
+        for (int round = 0; round < 5000; round++) {
+            int halves = 1 + random.nextInt(round < 1000 ? 300 : 4096);
+            byte[] code = randomCode(random, 2 * halves + 6);
+            int offset = 2 * random.nextInt(3);
+            int words = (halves + 63) >>> 6;
+            long[] expected = new long[words];
+            long[] actual = new long[words];
+            scalar.longBits(code, offset, halves, expected);
+            picked.longBits(code, offset, halves, actual);
+            assertArrayEquals(expected, actual, "bitmap of round " + round);
+
+            long carry = random.nextInt(2);
+            long[] starts = new long[words];
+            long out = TextScanner.starts(expected, words, carry, starts);
+            // One halfword at a time: a start unless the previous halfword started a 32-bit instruction
+            boolean start = carry == 0;
+            for (int k = 0; k < words * 64; k++) {
+                assertEquals(start, (starts[k >>> 6] >>> k & 1) != 0, "start of halfword " + k + " in round " + round);
+                start = !(start && (expected[k >>> 6] >>> k & 1) != 0);
+            }
+            assertEquals(start ? 0 : 1, out, "carry of round " + round);
+        }
+    }
+
+    @Test
+    void scan() throws ParseException {
+        Random random = new Random(2);
+        int[] edges = {0, 2, 126, 128, 130, TextScanner.BLOCK_SIZE - 2, TextScanner.BLOCK_SIZE, TextScanner.BLOCK_SIZE + 2};
+        for (int round = 0; round < 3000; round++) {
+            byte[] code = randomCode(random, 3 * TextScanner.BLOCK_SIZE);
+            int from = 2 * random.nextInt(200);
+            // Half of the ranges end around a block or bitmap word edge, some on an odd offset
+            int to = random.nextBoolean() ? from + edges[random.nextInt(edges.length)] + random.nextInt(2)
+                    : from + random.nextInt(2 * TextScanner.BLOCK_SIZE);
+            long[] expected = {walk(code, from, to), walk(code, from + 2, to)};
+            ByteSource src = new ByteSource(code);
+            assertArrayEquals(expected, scalar.scan(src, 0, from, to), "scalar [" + from + ", " + to + ")");
+            assertArrayEquals(expected, picked.scan(src, 0, from, to), picked.name() + " [" + from + ", " + to + ")");
+        }
+    }
+
+    // Long runs of 32-bit low bits are where the starts alternate, so rounds mix dense and sparse ones
+    private static byte[] randomCode(Random random, int length) {
+        byte[] code = new byte[length];
+        double heads = random.nextDouble();
+        for (int k = 0; k < length; k++) {
+            int b = random.nextInt(256);
+            code[k] = (byte) (random.nextDouble() < heads ? b | 3 : b & ~1);
+        }
+        return code;
+    }
+
+    private static long walk(byte[] code, long from, long to) {
+        long i = from;
+        while (i < to) {
+            i += (code[(int) i] & 3) == 3 ? 4 : 2;
+        }
+        return i;
+    }
+}